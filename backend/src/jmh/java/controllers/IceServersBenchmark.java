@@ -0,0 +1,68 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import services.TurnCredentialIssuer;
+import services.turn.TurnServerPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выдача списка ICE-серверов {@link WebRTCConfigController#getIceServers}.
+ * При {@code bucketSeconds=1} учетные данные TURN пересчитываются каждую секунду,
+ * что показывает стоимость вычисления HMAC и сериализации на фоне кэшированной выдачи.
+ * STUN-проверки пула не запускаются.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IceServersBenchmark {
+
+    @Param({"1", "60"})
+    public long bucketSeconds;
+
+    private WebRTCConfigController controller;
+
+    @Setup
+    public void setUp() throws Exception {
+        TurnServerPool pool = new TurnServerPool(new String[]{"turn:turn1.example.com:3478", "turn:turn2.example.com:3478"});
+        ReflectionTestUtils.setField(pool, "maxServers", 2);
+        ReflectionTestUtils.setField(pool, "probeTimeoutMs", 1000);
+        ReflectionTestUtils.setField(pool, "loadPenaltyMs", 1.0);
+
+        TurnCredentialIssuer issuer = new TurnCredentialIssuer(new ObjectMapper(), pool, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(issuer, "stunServerUrl", "stun:stun.l.google.com:19302");
+        ReflectionTestUtils.setField(issuer, "turnSecret", "benchmark-turn-secret");
+        ReflectionTestUtils.setField(issuer, "credentialTtlSeconds", 600L);
+        ReflectionTestUtils.setField(issuer, "bucketSeconds", bucketSeconds);
+        issuer.init();
+
+        controller = new WebRTCConfigController(issuer);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> withTurn() {
+        return controller.getIceServers(true);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> stunOnly() {
+        return controller.getIceServers(false);
+    }
+}
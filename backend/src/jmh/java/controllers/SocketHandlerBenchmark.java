@@ -0,0 +1,138 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import services.cluster.ClusterDirectory;
+import services.cluster.LoopbackClusterBus;
+import services.signaling.CallStateRegistry;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.OutboundQueueRegistry;
+import services.signaling.PresenceBroadcaster;
+import services.signaling.PresenceIndex;
+import services.signaling.SignalingMessageDecoder;
+import services.signaling.StubWebSocketSession;
+import services.webrtc.UserRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка входящего кадра {@link SocketHandler#handleTextMessage} для P2P-сообщений:
+ * разбор, проверка состояния звонка и постановка ответа в очередь получателя.
+ * Пользователи 1 и 2 свободны, пользователи 3 и 4 находятся в звонке.
+ * Комнатные сообщения, кроме неизвестных, требуют Kurento и здесь не измеряются.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketHandlerBenchmark {
+
+    private static final String SDP = "v=0\\r\\no=- 46117317 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n";
+
+    private OutboundQueueRegistry outboundQueues;
+    private PresenceBroadcaster presenceBroadcaster;
+    private IceCandidateBatcher iceBatcher;
+    private LoopbackClusterBus clusterBus;
+    private SocketHandler handler;
+    private StubWebSocketSession user1;
+    private StubWebSocketSession user3;
+    private StubWebSocketSession user4;
+
+    private TextMessage callUser;
+    private TextMessage hangUp;
+    private TextMessage makeAnswer;
+    private TextMessage iceCandidate;
+    private TextMessage turnRenegotiation;
+    private TextMessage unknownRoomMessage;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        outboundQueues = new OutboundQueueRegistry(4096, 10_000, OverflowPolicy.DROP_STALE, 0, false);
+        presenceBroadcaster = new PresenceBroadcaster(objectMapper);
+        ReflectionTestUtils.setField(presenceBroadcaster, "tickMs", 50L);
+        iceBatcher = new IceCandidateBatcher(objectMapper);
+        CallStateRegistry callStates = new CallStateRegistry();
+        PresenceIndex presenceIndex = new PresenceIndex();
+        // Единственный узел: пересылок между узлами нет, измеряется только локальный путь
+        clusterBus = new LoopbackClusterBus("benchmark");
+        ClusterDirectory clusterDirectory = new ClusterDirectory(clusterBus, objectMapper, presenceIndex,
+                presenceBroadcaster, callStates);
+        handler = new SocketHandler(objectMapper, new SignalingMessageDecoder(objectMapper), presenceBroadcaster,
+                outboundQueues, callStates, presenceIndex, iceBatcher, clusterBus, clusterDirectory,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(handler, "registry", new UserRegistry());
+
+        user1 = StubWebSocketSession.forUser(1);
+        user3 = StubWebSocketSession.forUser(3);
+        user4 = StubWebSocketSession.forUser(4);
+        handler.afterConnectionEstablished(user1);
+        handler.afterConnectionEstablished(StubWebSocketSession.forUser(2));
+        handler.afterConnectionEstablished(user3);
+        handler.afterConnectionEstablished(user4);
+        callStates.startCall(3L, 4L);
+        callStates.answer(4L, 3L);
+
+        callUser = new TextMessage("{\"type\":\"call-user\",\"to\":2,\"offer\":{\"type\":\"offer\",\"sdp\":\"" + SDP + "\"}}");
+        hangUp = new TextMessage("{\"type\":\"hang-up\",\"to\":2}");
+        makeAnswer = new TextMessage("{\"type\":\"make-answer\",\"to\":3,\"answer\":{\"type\":\"answer\",\"sdp\":\"" + SDP + "\"}}");
+        iceCandidate = new TextMessage("{\"type\":\"ice-candidate\",\"to\":4,\"candidate\":{\"candidate\":"
+                + "\"candidate:842163049 1 udp 1677729535 203.0.113.7 54321 typ srflx raddr 0.0.0.0 rport 0\","
+                + "\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}");
+        turnRenegotiation = new TextMessage("{\"type\":\"request-turn-renegotiation\",\"to\":4}");
+        unknownRoomMessage = new TextMessage("{\"id\":\"ping\"}");
+    }
+
+    /**
+     * Вызов и сброс: пара сообщений возвращает пользователей 1 и 2 в исходное состояние.
+     */
+    @Benchmark
+    public void callUserAndHangUp() throws Exception {
+        handler.handleTextMessage(user1, callUser);
+        handler.handleTextMessage(user1, hangUp);
+    }
+
+    @Benchmark
+    public void makeAnswer() throws Exception {
+        handler.handleTextMessage(user4, makeAnswer);
+    }
+
+    @Benchmark
+    public void iceCandidate() throws Exception {
+        handler.handleTextMessage(user3, iceCandidate);
+    }
+
+    @Benchmark
+    public void turnRenegotiation() throws Exception {
+        handler.handleTextMessage(user3, turnRenegotiation);
+    }
+
+    @Benchmark
+    public void unknownRoomMessage() throws Exception {
+        handler.handleTextMessage(user3, unknownRoomMessage);
+    }
+
+    @TearDown
+    public void tearDown() {
+        presenceBroadcaster.shutdown();
+        iceBatcher.shutdown();
+        outboundQueues.shutdown();
+        clusterBus.close();
+    }
+}
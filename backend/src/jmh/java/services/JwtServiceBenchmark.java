@@ -0,0 +1,84 @@
+package services;
+
+import enums.UserActivate;
+import enums.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import models.TokenParseResult;
+import models.TokenPrincipal;
+import models.TokenRevocation;
+import models.User;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import repositories.UserRepository;
+import services.cluster.LoopbackClusterBus;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выпуск и проверка JWT: полная проверка подписи и проверка через кэш проверенных токенов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private JwtService jwtService;
+    private LoopbackClusterBus clusterBus;
+    private VerifiedTokenCache tokenCache;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secret", "benchmark-secret-benchmark-secret-benchmark-secret");
+        jwtService.init();
+        clusterBus = new LoopbackClusterBus("benchmark");
+        // Отзывов нет: пользователь существует, токены не отзывались
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findTokenRevocation(Mockito.anyLong()))
+                .thenReturn(Optional.of(new TokenRevocation(null)));
+        tokenCache = new VerifiedTokenCache(jwtService, userRepository, clusterBus, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenCache, "maxSize", 10_000);
+
+        user = new User("bench", "bench@example.com", "{bcrypt}unused", UserRole.Base);
+        user.setId(1L);
+        user.setActivation(UserActivate.Enable);
+        token = jwtService.generateToken(user);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clusterBus.close();
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public TokenParseResult parse() {
+        return jwtService.parse(token);
+    }
+
+    @Benchmark
+    public Optional<TokenPrincipal> verifyCached() {
+        return tokenCache.verify(token);
+    }
+}
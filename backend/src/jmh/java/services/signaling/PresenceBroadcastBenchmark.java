@@ -0,0 +1,60 @@
+package services.signaling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.OverflowPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка кадра присутствия всем онлайн-сеансам: постановка в исходящие очереди.
+ * Запись в сокеты выполняется пулом писателей в фоне и в замер не входит.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresenceBroadcastBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int sessions;
+
+    private OutboundQueueRegistry outboundQueues;
+    private PresenceBroadcaster broadcaster;
+    private TextMessage frame;
+
+    @Setup
+    public void setUp() {
+        outboundQueues = new OutboundQueueRegistry(256, 10_000, OverflowPolicy.DROP_STALE, 0, false);
+        broadcaster = new PresenceBroadcaster(new ObjectMapper());
+        for (int i = 0; i < sessions; i++) {
+            broadcaster.subscribe(outboundQueues.register(StubWebSocketSession.forUser(i)));
+        }
+        frame = new TextMessage("{\"type\":\"user-in-call-status-changed\",\"userId\":1,\"inCall\":true}");
+    }
+
+    @Benchmark
+    public void broadcast() {
+        broadcaster.broadcast(frame);
+    }
+
+    @TearDown
+    public void tearDown() {
+        broadcaster.shutdown();
+        outboundQueues.shutdown();
+    }
+}
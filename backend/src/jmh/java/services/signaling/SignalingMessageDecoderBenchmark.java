@@ -0,0 +1,56 @@
+package services.signaling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.SignalingMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор входящих кадров сигнализации по типам сообщений.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalingMessageDecoderBenchmark {
+
+    static final Map<String, String> FRAMES = Map.of(
+            "call-user", "{\"type\":\"call-user\",\"to\":2,\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\\r\\no=- 46117317 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n\"},\"useTurn\":false}",
+            "make-answer", "{\"type\":\"make-answer\",\"to\":1,\"answer\":{\"type\":\"answer\",\"sdp\":\"v=0\\r\\no=- 46117318 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n\"}}",
+            "ice-candidate", "{\"type\":\"ice-candidate\",\"to\":2,\"candidate\":{\"candidate\":\"candidate:842163049 1 udp 1677729535 203.0.113.7 54321 typ srflx raddr 0.0.0.0 rport 0 generation 0\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}",
+            "hang-up", "{\"type\":\"hang-up\",\"to\":2}",
+            "joinRoom", "{\"id\":\"joinRoom\",\"room\":\"bench\",\"name\":\"user1\"}",
+            "onIceCandidate", "{\"id\":\"onIceCandidate\",\"name\":\"user2\",\"candidate\":{\"candidate\":\"candidate:1 1 udp 2122260223 10.0.0.5 50000 typ host\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}");
+
+    @Param({"call-user", "make-answer", "ice-candidate", "hang-up", "joinRoom", "onIceCandidate"})
+    public String type;
+
+    private SignalingMessageDecoder decoder;
+    private String frame;
+
+    @Setup
+    public void setUp() {
+        decoder = new SignalingMessageDecoder(new ObjectMapper());
+        frame = FRAMES.get(type);
+    }
+
+    @Benchmark
+    public SignalingMessage decode() throws IOException {
+        return decoder.decode(frame);
+    }
+}
@@ -0,0 +1,84 @@
+package loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR-гистограммы задержек по типам сообщений (в микросекундах) и счетчики ошибок.
+ * Запись потокобезопасна и не блокирует; накопленные значения забираются в {@link #snapshot()}.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> totals = new TreeMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public void record(String type, long latencyNanos) {
+        recorders.computeIfAbsent(type, t -> new Recorder(3)).recordValue(Math.max(0, latencyNanos / 1000));
+    }
+
+    public void error(String type) {
+        errors.computeIfAbsent(type, t -> new LongAdder()).increment();
+    }
+
+    /**
+     * Переносит записанное с прошлого вызова в накопленные гистограммы.
+     *
+     * @return Гистограммы за прошедший интервал по типам.
+     */
+    public synchronized Map<String, Histogram> snapshot() {
+        Map<String, Histogram> interval = new TreeMap<>();
+        recorders.forEach((type, recorder) -> {
+            Histogram histogram = recorder.getIntervalHistogram();
+            interval.put(type, histogram);
+            totals.computeIfAbsent(type, t -> new Histogram(3)).add(histogram);
+        });
+        return interval;
+    }
+
+    public void printInterval(PrintStream out, long elapsedSeconds) {
+        StringBuilder line = new StringBuilder(String.format("[%4ds]", elapsedSeconds));
+        snapshot().forEach((type, histogram) -> line.append(String.format(" %s=%d (p99 %.1f ms)",
+                type, histogram.getTotalCount(), histogram.getValueAtPercentile(99) / 1000.0)));
+        out.println(line);
+    }
+
+    /**
+     * Печатает итоговую таблицу и сохраняет распределения в {@code <type>.hgrm}.
+     */
+    public synchronized void printSummary(PrintStream out, Path outputDir) throws IOException {
+        snapshot();
+        Files.createDirectories(outputDir);
+        out.printf("%-18s %10s %9s %9s %9s %9s %9s %8s%n",
+                "type", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Map.Entry<String, Histogram> entry : totals.entrySet()) {
+            Histogram h = entry.getValue();
+            out.printf("%-18s %10d %9.2f %9.2f %9.2f %9.2f %9.2f %8d%n", entry.getKey(), h.getTotalCount(),
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxValue() / 1000.0, errorCount(entry.getKey()));
+            try (PrintStream file = new PrintStream(Files.newOutputStream(outputDir.resolve(entry.getKey() + ".hgrm")))) {
+                h.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+        errors.forEach((type, count) -> {
+            if (!totals.containsKey(type)) {
+                out.printf("%-18s %10s %9s %9s %9s %9s %9s %8d%n", type, "-", "-", "-", "-", "-", "-", count.sum());
+            }
+        });
+    }
+
+    private long errorCount(String type) {
+        LongAdder count = errors.get(type);
+        return count == null ? 0 : count.sum();
+    }
+}
@@ -0,0 +1,58 @@
+package loadtest;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Параметры прогона из аргументов вида {@code --users=2000}.
+ *
+ * @param users          Клиенты P2P-звонков (разбиваются на пары).
+ * @param roomUsers      Клиенты групповых комнат.
+ * @param roomSize       Участников в одной комнате.
+ * @param durationSeconds Длительность нагрузки после подключения всех клиентов.
+ * @param connectBatch   Сколько соединений открывается одновременно.
+ * @param iceCandidates  ICE-кандидатов на один звонок.
+ * @param thinkMs        Пауза между звонками и между выходом из комнаты и повторным входом.
+ * @param roomHoldMs     Сколько участник остается в комнате.
+ * @param callTimeoutMs  Звонок без hang-up дольше этого считается ошибкой.
+ * @param outputDir      Каталог для файлов {@code .hgrm}.
+ */
+public record LoadTestOptions(int users, int roomUsers, int roomSize, int durationSeconds, int connectBatch,
+                              int iceCandidates, long thinkMs, long roomHoldMs, long callTimeoutMs, Path outputDir) {
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        int users = intValue(values, "users", 1000);
+        LoadTestOptions options = new LoadTestOptions(
+                users - users % 2,
+                intValue(values, "roomUsers", 0),
+                intValue(values, "roomSize", 4),
+                intValue(values, "duration", 60),
+                intValue(values, "connectBatch", 200),
+                intValue(values, "iceCandidates", 4),
+                intValue(values, "thinkMs", 500),
+                intValue(values, "roomHoldMs", 5000),
+                intValue(values, "callTimeoutMs", 10000),
+                Path.of(values.getOrDefault("output", "target/loadtest")));
+        values.keySet().removeAll(Set.of("users", "roomUsers", "roomSize", "duration", "connectBatch",
+                "iceCandidates", "thinkMs", "roomHoldMs", "callTimeoutMs", "output"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        return options;
+    }
+
+    private static int intValue(Map<String, String> values, String key, int defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
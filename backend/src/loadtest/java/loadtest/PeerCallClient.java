@@ -0,0 +1,130 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Участник пары P2P. Вызывающий повторяет цикл
+ * call-user -> make-answer -> ice-candidate x N -> hang-up; собеседник отвечает на каждый шаг.
+ * Время отправки кладется в пересылаемый сервером объект (offer, answer, candidate),
+ * поэтому задержка считается от отправки до получения у собеседника.
+ */
+public class PeerCallClient extends SignalingClient {
+
+    private static final String SDP = "v=0\r\no=- 46117317 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n";
+
+    private final LoadTestOptions options;
+    private final boolean caller;
+    private volatile PeerCallClient peer;
+    private volatile long userId;
+    private volatile long hangUpSentAt;
+    private volatile int callId;
+    private volatile boolean callCompleted;
+    private int receivedCandidates;
+
+    public PeerCallClient(ObjectMapper objectMapper, LatencyRecorder recorder, ScheduledExecutorService scheduler,
+                          LoadTestOptions options, boolean caller) {
+        super(objectMapper, recorder, scheduler);
+        this.options = options;
+        this.caller = caller;
+    }
+
+    public void pair(PeerCallClient peer, long userId) {
+        this.peer = peer;
+        this.userId = userId;
+    }
+
+    @Override
+    public void start() {
+        if (caller) {
+            startCall();
+        }
+    }
+
+    private void startCall() {
+        int id = ++callId;
+        callCompleted = false;
+        ObjectNode call = message("type", "call-user");
+        call.put("to", peer.userId);
+        call.set("offer", timestamped("offer"));
+        send(call);
+        // ICE-кандидаты отбрасываемы, поэтому зависший звонок сбрасывается по таймауту
+        schedule(() -> {
+            if (callId == id && !callCompleted) {
+                recorder.error("call-timeout");
+                send(hangUp());
+                schedule(this::startCall, options.thinkMs());
+            }
+        }, options.callTimeoutMs());
+    }
+
+    @Override
+    protected void onMessage(String type, JsonNode message) {
+        long now = System.nanoTime();
+        switch (type) {
+            case "call-made" -> {
+                recorder.record("call-user", now - message.path("offer").path("sentAt").asLong());
+                receivedCandidates = 0;
+                ObjectNode answer = message("type", "make-answer");
+                answer.put("to", peer.userId);
+                answer.set("answer", timestamped("answer"));
+                send(answer);
+            }
+            case "answer-made" -> {
+                recorder.record("make-answer", now - message.path("answer").path("sentAt").asLong());
+                for (int i = 0; i < options.iceCandidates(); i++) {
+                    ObjectNode candidate = message("type", "ice-candidate");
+                    candidate.put("to", peer.userId);
+                    ObjectNode payload = objectMapper.createObjectNode();
+                    payload.put("candidate", "candidate:" + i + " 1 udp 2122260223 10.0.0." + (i + 1) + " 5000" + i + " typ host");
+                    payload.put("sdpMid", "0");
+                    payload.put("sdpMLineIndex", 0);
+                    payload.put("sentAt", System.nanoTime());
+                    candidate.set("candidate", payload);
+                    send(candidate);
+                }
+            }
+            case "ice-candidate" -> {
+                recorder.record("ice-candidate", now - message.path("candidate").path("sentAt").asLong());
+                if (++receivedCandidates == options.iceCandidates()) {
+                    hangUpSentAt = System.nanoTime();
+                    send(hangUp());
+                }
+            }
+            case "hang-up" -> {
+                if (caller) {
+                    recorder.record("hang-up", now - peer.hangUpSentAt);
+                    callCompleted = true;
+                    schedule(this::startCall, options.thinkMs());
+                }
+            }
+            case "call-rejected", "error" -> {
+                recorder.error(type);
+                if (caller) {
+                    callCompleted = true;
+                    schedule(this::startCall, options.thinkMs());
+                }
+            }
+            default -> {
+                // Присутствие и прочие рассылки сценарий не использует
+            }
+        }
+    }
+
+    private ObjectNode hangUp() {
+        ObjectNode hangUp = message("type", "hang-up");
+        hangUp.put("to", peer.userId);
+        return hangUp;
+    }
+
+    private ObjectNode timestamped(String sdpType) {
+        ObjectNode sdp = objectMapper.createObjectNode();
+        sdp.put("type", sdpType);
+        sdp.put("sdp", SDP);
+        sdp.put("sentAt", System.nanoTime());
+        return sdp;
+    }
+}
@@ -0,0 +1,84 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Участник групповой комнаты: joinRoom, receiveVideoFrom для себя и каждого участника,
+ * через {@code roomHoldMs} выход и повторный вход.
+ */
+public class RoomClient extends SignalingClient {
+
+    private static final String SDP_OFFER = "v=0\r\no=- 46117317 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\nm=video 9 UDP/TLS/RTP/SAVPF 96\r\n";
+
+    private final LoadTestOptions options;
+    private final String room;
+    private final String name;
+    // Имя отправителя -> время отправки receiveVideoFrom
+    private final Map<String, Long> pendingOffers = new ConcurrentHashMap<>();
+    private volatile long joinSentAt;
+
+    public RoomClient(ObjectMapper objectMapper, LatencyRecorder recorder, ScheduledExecutorService scheduler,
+                      LoadTestOptions options, String room, String name) {
+        super(objectMapper, recorder, scheduler);
+        this.options = options;
+        this.room = room;
+        this.name = name;
+    }
+
+    @Override
+    public void start() {
+        join();
+    }
+
+    private void join() {
+        pendingOffers.clear();
+        joinSentAt = System.nanoTime();
+        ObjectNode join = message("id", "joinRoom");
+        join.put("room", room);
+        join.put("name", name);
+        send(join);
+    }
+
+    private void leave() {
+        send(message("id", "leaveRoom"));
+        schedule(this::join, options.thinkMs());
+    }
+
+    private void receiveVideoFrom(String sender) {
+        pendingOffers.put(sender, System.nanoTime());
+        ObjectNode receive = message("id", "receiveVideoFrom");
+        receive.put("sender", sender);
+        receive.put("sdpOffer", SDP_OFFER);
+        send(receive);
+    }
+
+    @Override
+    protected void onMessage(String type, JsonNode message) {
+        long now = System.nanoTime();
+        switch (type) {
+            case "existingParticipants" -> {
+                recorder.record("joinRoom", now - joinSentAt);
+                receiveVideoFrom(name);
+                message.path("data").forEach(participant -> receiveVideoFrom(participant.asText()));
+                schedule(this::leave, options.roomHoldMs());
+            }
+            case "newParticipantArrived" -> receiveVideoFrom(message.path("name").asText());
+            case "receiveVideoAnswer" -> {
+                Long sentAt = pendingOffers.remove(message.path("name").asText());
+                if (sentAt != null) {
+                    recorder.record("receiveVideoFrom", now - sentAt);
+                }
+            }
+            case "error" -> recorder.error("room-error");
+            default -> {
+                // participantLeft, iceCandidate и прочие сообщения не измеряются
+            }
+        }
+    }
+}
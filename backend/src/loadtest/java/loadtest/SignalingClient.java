@@ -0,0 +1,137 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Виртуальный клиент {@code /signal}: подключение, отправка кадров и разбор входящих.
+ * Подклассы реализуют сценарий в {@link #onMessage(JsonNode)}.
+ */
+public abstract class SignalingClient extends TextWebSocketHandler {
+
+    protected final ObjectMapper objectMapper;
+    protected final LatencyRecorder recorder;
+    private final ScheduledExecutorService scheduler;
+    private final CompletableFuture<Long> connected = new CompletableFuture<>();
+
+    private volatile WebSocketSession session;
+    private volatile long connectStartedAt;
+    private volatile boolean running = true;
+
+    protected SignalingClient(ObjectMapper objectMapper, LatencyRecorder recorder, ScheduledExecutorService scheduler) {
+        this.objectMapper = objectMapper;
+        this.recorder = recorder;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Открывает соединение.
+     *
+     * @return Future с идентификатором пользователя из connection-success.
+     */
+    public CompletableFuture<Long> connect(WebSocketClient client, URI uri) {
+        connectStartedAt = System.nanoTime();
+        client.execute(this, new WebSocketHttpHeaders(), uri).whenComplete((ignored, e) -> {
+            if (e != null) {
+                recorder.error("connect");
+                connected.completeExceptionally(e);
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * Запускает сценарий после подключения всех клиентов.
+     */
+    public abstract void start();
+
+    protected abstract void onMessage(String type, JsonNode message);
+
+    public void stop() {
+        running = false;
+    }
+
+    public void close() {
+        WebSocketSession current = session;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close(CloseStatus.NORMAL);
+            } catch (IOException e) {
+                // Закрываем в конце прогона, ошибки не важны
+            }
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        this.session = new ConcurrentWebSocketSessionDecorator(session, 10_000, 1024 * 1024);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        try {
+            JsonNode node = objectMapper.readTree(message.getPayload());
+            String type = node.hasNonNull("type") ? node.get("type").asText() : node.path("id").asText();
+            if ("connection-success".equals(type)) {
+                recorder.record("connect", System.nanoTime() - connectStartedAt);
+                connected.complete(node.path("myId").asLong());
+                return;
+            }
+            if (running) {
+                onMessage(type, node);
+            }
+        } catch (Exception e) {
+            recorder.error("client");
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        if (running) {
+            recorder.error("closed");
+        }
+        connected.completeExceptionally(new IOException("Connection closed: " + status));
+    }
+
+    protected ObjectNode message(String discriminator, String value) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put(discriminator, value);
+        return node;
+    }
+
+    protected void send(ObjectNode node) {
+        WebSocketSession current = session;
+        if (current == null || !current.isOpen()) {
+            return;
+        }
+        try {
+            current.sendMessage(new TextMessage(objectMapper.writeValueAsString(node)));
+        } catch (Exception e) {
+            recorder.error("send");
+        }
+    }
+
+    protected void schedule(Runnable task, long delayMs) {
+        if (running) {
+            scheduler.schedule(() -> {
+                if (running) {
+                    task.run();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.UserActivate;
+import enums.UserRole;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import main.Main;
+import models.User;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import repositories.UserRepository;
+import services.JwtService;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест сигнализации. Поднимает backend в этом же процессе (H2, заглушка Kurento),
+ * создает пользователей, открывает по соединению {@code /signal} на каждого и гоняет сценарии
+ * P2P-звонков и групповых комнат, записывая задержки в HDR-гистограммы.
+ * <p>
+ * Запуск: {@code mvn -Ploadtest verify -Dloadtest.args="--users=2000 --duration=120"}.
+ */
+public class SignalingLoadTest {
+
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+    // Буфер выделяется на каждое соединение, поэтому рассчитывается по числу пользователей
+    private static final int BYTES_PER_ONLINE_USER = 100;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        // Перезапуск devtools увел бы приложение в другой поток, и ошибка запуска не попала бы в код выхода
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class, StubKurentoConfig.class)
+                .profiles("loadtest")
+                .run();
+        try {
+            run(context, options);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(ConfigurableApplicationContext context, LoadTestOptions options) throws Exception {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        JwtService jwtService = context.getBean(JwtService.class);
+        List<User> users = createUsers(context.getBean(UserRepository.class), options.users() + options.roomUsers());
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread thread = new Thread(r, "loadtest-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        List<SignalingClient> clients = new ArrayList<>(users.size());
+        for (int i = 0; i < options.users(); i += 2) {
+            PeerCallClient caller = new PeerCallClient(objectMapper, recorder, scheduler, options, true);
+            PeerCallClient callee = new PeerCallClient(objectMapper, recorder, scheduler, options, false);
+            caller.pair(callee, users.get(i).getId());
+            callee.pair(caller, users.get(i + 1).getId());
+            clients.add(caller);
+            clients.add(callee);
+        }
+        for (int i = 0; i < options.roomUsers(); i++) {
+            User user = users.get(options.users() + i);
+            clients.add(new RoomClient(objectMapper, recorder, scheduler, options,
+                    "load-room-" + i / options.roomSize(), user.getLogin()));
+        }
+
+        // connection-success несет список всех онлайн-пользователей и не помещается в буфер по умолчанию (8 КБ)
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(8192 + users.size() * BYTES_PER_ONLINE_USER);
+        WebSocketClient webSocketClient = new StandardWebSocketClient(container);
+        System.out.printf("Connecting %d clients to port %d...%n", clients.size(), port);
+        for (int from = 0; from < clients.size(); from += options.connectBatch()) {
+            List<CompletableFuture<Long>> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(from + options.connectBatch(), clients.size()); i++) {
+                URI uri = URI.create("ws://localhost:" + port + "/signal?token=" + jwtService.generateToken(users.get(i)));
+                batch.add(clients.get(i).connect(webSocketClient, uri)
+                        .orTimeout(30, TimeUnit.SECONDS)
+                        .exceptionally(e -> null));
+            }
+            CompletableFuture.allOf(batch.toArray(CompletableFuture[]::new)).join();
+        }
+        recorder.printInterval(System.out, 0);
+
+        clients.forEach(SignalingClient::start);
+        long startedAt = System.nanoTime();
+        for (long elapsed = 0; elapsed < options.durationSeconds(); ) {
+            long step = Math.min(REPORT_INTERVAL_SECONDS, options.durationSeconds() - elapsed);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(step));
+            elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt);
+            recorder.printInterval(System.out, elapsed);
+        }
+
+        clients.forEach(SignalingClient::stop);
+        scheduler.shutdownNow();
+        clients.forEach(SignalingClient::close);
+
+        System.out.println();
+        recorder.printSummary(System.out, options.outputDir());
+        System.out.println("Histograms written to " + options.outputDir().toAbsolutePath());
+    }
+
+    private static List<User> createUsers(UserRepository userRepository, int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User("load" + i, "load" + i + "@loadtest.local", "{noop}loadtest", UserRole.Base);
+            user.setActivation(UserActivate.Enable);
+            user.setTwoFactorEnabled(false);
+            users.add(user);
+        }
+        return userRepository.saveAll(users);
+    }
+}
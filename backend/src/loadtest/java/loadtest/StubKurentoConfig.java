@@ -0,0 +1,25 @@
+package loadtest;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import services.webrtc.KurentoClientFactory;
+import services.webrtc.StubMediaServerHandler;
+
+/**
+ * Подменяет клиентов Kurento на клиентов локальной заглушки медиасервера.
+ */
+@Configuration
+public class StubKurentoConfig {
+
+    @Bean
+    public StubMediaServerHandler stubMediaServerHandler() {
+        return new StubMediaServerHandler();
+    }
+
+    @Bean
+    public KurentoClientFactory kurentoClientFactory(StubMediaServerHandler handler) {
+        return uri -> KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(handler));
+    }
+}
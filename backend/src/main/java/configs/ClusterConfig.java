@@ -0,0 +1,46 @@
+package configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import services.cluster.ClusterBus;
+import services.cluster.LoopbackClusterBus;
+import services.cluster.RedisClusterBus;
+
+import java.util.UUID;
+
+@Configuration
+public class ClusterConfig {
+
+    // Пустое значение - случайный идентификатор при каждом запуске
+    @Value("${signaling.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${signaling.cluster.redis.channel-prefix:signal}")
+    private String channelPrefix;
+
+    /**
+     * Шина внутри процесса: один узел или несколько контекстов приложения в одной JVM.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "signaling.cluster.bus", havingValue = "loopback", matchIfMissing = true)
+    public ClusterBus loopbackClusterBus() {
+        return new LoopbackClusterBus(resolveNodeId());
+    }
+
+    /**
+     * Шина через Redis Pub/Sub для нескольких реплик backend.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "signaling.cluster.bus", havingValue = "redis")
+    public ClusterBus redisClusterBus(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
+        return new RedisClusterBus(resolveNodeId(), channelPrefix, connectionFactory, objectMapper);
+    }
+
+    private String resolveNodeId() {
+        return nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId.trim();
+    }
+}
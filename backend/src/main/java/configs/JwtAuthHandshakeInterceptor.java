@@ -1,40 +1,47 @@
 package configs;
 
-import models.User;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
-import repositories.UserRepository;
-import services.JwtService;
+import org.springframework.web.util.UriComponentsBuilder;
+import models.TokenPrincipal;
+import services.VerifiedTokenCache;
+import services.signaling.IceCandidateBatcher;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 
 @Component
 public class JwtAuthHandshakeInterceptor implements HandshakeInterceptor {
 
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final VerifiedTokenCache tokenCache;
 
-    public JwtAuthHandshakeInterceptor(JwtService jwtService, UserRepository userRepository) {
-        this.jwtService = jwtService;
-        this.userRepository = userRepository;
+    public JwtAuthHandshakeInterceptor(VerifiedTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
     }
 
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
-        String query = request.getURI().getQuery();
-        if (query != null && query.contains("token=")) {
-            String token = query.substring(query.indexOf("token=") + 6);
-            if (jwtService.validateToken(token)) {
-                String login = jwtService.extractLogin(token);
-                Optional<User> user = userRepository.findByLogin(login);
-                if (user.isPresent()) {
-                    attributes.put("userId", user.get().getId());
-                    return true;
-                }
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        String token = params.getFirst("token");
+        if (token != null && !token.isEmpty()) {
+            Optional<TokenPrincipal> principal = tokenCache.verify(token);
+            if (principal.isPresent()) {
+                attributes.put("userId", principal.get().userId());
+                attributes.put("username", principal.get().username());
+                attributes.put("login", principal.get().login());
+                attributes.put("role", principal.get().primaryRole());
+                // Необязательные возможности протокола, запрошенные клиентом: features=ice-batch,...
+                String features = params.getFirst("features");
+                attributes.put("iceBatch", features != null
+                        && Arrays.asList(features.split(",")).contains(IceCandidateBatcher.FEATURE));
+                // mode=room: соединение только для групповой комнаты после roomRedirect, без присутствия и P2P
+                attributes.put("roomOnly", "room".equals(params.getFirst("mode")));
+                return true;
             }
         }
         return false;
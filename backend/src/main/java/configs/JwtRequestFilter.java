@@ -11,21 +11,17 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import repositories.UserRepository;
-import services.JwtService;
+import services.VerifiedTokenCache;
 
 import java.io.IOException;
-import java.util.Collections;
 
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final VerifiedTokenCache tokenCache;
 
-    public JwtRequestFilter(JwtService jwtService, UserRepository userRepository) {
-        this.jwtService = jwtService;
-        this.userRepository = userRepository;
+    public JwtRequestFilter(VerifiedTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
     }
 
     @Override
@@ -34,31 +30,22 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
-
-        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
-            username = jwtService.extractLogin(jwt);
-        }
-
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            if (jwtService.validateToken(jwt)) {
-                UserDetails userDetails = userRepository.findByLogin(username)
-                        .map(user -> new org.springframework.security.core.userdetails.User(
-                                user.getLogin(),
-                                user.getPassword(),
-                                Collections.singletonList(new SimpleGrantedAuthority(user.getRole().name()))))
-                        .orElse(null);
-
-                if (userDetails != null) {
-                    UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
-                    usernamePasswordAuthenticationToken
-                            .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
-                }
-            }
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            String jwt = authorizationHeader.substring(7);
+            // Принципал строится из утверждений токена, без обращения к базе данных
+            tokenCache.verify(jwt).ifPresent(principal -> {
+                UserDetails userDetails = new org.springframework.security.core.userdetails.User(
+                        principal.login(),
+                        "",
+                        principal.roles().stream().map(SimpleGrantedAuthority::new).toList());
+
+                UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities());
+                usernamePasswordAuthenticationToken
+                        .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
+            });
         }
         chain.doFilter(request, response);
     }
@@ -1,18 +1,55 @@
 package configs;
 
 import org.kurento.client.KurentoClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import services.webrtc.KurentoClientFactory;
+import services.webrtc.KurentoClientPool;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class KurentoConfig {
 
-    @Value("${kurento.ws.uri}")
-    private String kurentoWsUri;
+    // Список медиасерверов через запятую; по умолчанию - единственный kurento.ws.uri
+    @Value("${kurento.ws.uris:${kurento.ws.uri}}")
+    private String[] kurentoWsUris;
+
+    @Value("${kurento.executor-threads:0}")
+    private int executorThreads;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
 
     @Bean(destroyMethod = "destroy")
-    public KurentoClient kurentoClient() {
-        return KurentoClient.create(kurentoWsUri);
+    public KurentoClientPool kurentoClientPool(ObjectProvider<KurentoClientFactory> clientFactory) {
+        return new KurentoClientPool(Arrays.stream(kurentoWsUris)
+                .map(String::trim)
+                .filter(uri -> !uri.isEmpty())
+                .toList(), clientFactory.getIfAvailable(() -> KurentoClient::create));
+    }
+
+    /**
+     * Пул для операций с медиасервером, чтобы не занимать ими потоки WebSocket и потоки
+     * обратных вызовов клиента Kurento. В режиме виртуальных потоков каждая задача получает
+     * собственный виртуальный поток.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService kurentoExecutor() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kurento-media-", 1).factory());
+        }
+        int threads = executorThreads > 0 ? executorThreads : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "kurento-media-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
-}
\ No newline at end of file
+}
@@ -28,13 +28,16 @@ public class SecurityConfig {
     private final JwtRequestFilter jwtRequestFilter;
     @Value("${app.cors.allowed-origins}")
     private String[] allowedOrigins;
+    // Повышение стоимости применяется к существующим хешам при следующем входе пользователя
+    @Value("${app.security.bcrypt-strength:10}")
+    private int bcryptStrength;
     public SecurityConfig(JwtRequestFilter jwtRequestFilter) {
         this.jwtRequestFilter = jwtRequestFilter;
     }
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
@@ -45,6 +48,8 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                         .requestMatchers("/api/auth/login", "/api/auth/register", "/api/auth/verify-2fa", "/signal/**", "/", "/index.html", "/assets/**", "/vite.svg").permitAll()
+                        // Наружу через nginx не проксируется; опрашивается Prometheus и проверками docker
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                         .requestMatchers("/api/v1/webrtc/ice-servers").hasAnyAuthority("Base", "Admin", "VIP")
                         .requestMatchers("/api/admin/**").hasAuthority("Admin")
                         .anyRequest().authenticated()
@@ -1,11 +1,30 @@
 package controllers;
 
+import enums.BulkUpdateStatus;
+import enums.UserActivate;
 import enums.UserRole;
-import models.User;
+import models.BulkUpdateResult;
+import models.BulkUserRequest;
+import models.HashingStats;
+import models.MailQueueStats;
+import models.OutboundQueueStats;
+import models.RoomStats;
+import models.TurnServerStatus;
+import models.UserCacheStats;
+import models.UserPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import services.AdminService;
+import services.MailDispatcher;
+import services.PasswordHashingService;
+import services.UserCache;
+import services.signaling.OutboundQueueRegistry;
+import services.turn.TurnServerPool;
+import services.webrtc.RoomManager;
 
 import java.util.List;
 
@@ -15,35 +34,143 @@ import java.util.List;
 public class AdminController {
 
     private final AdminService adminService;
+    private final OutboundQueueRegistry outboundQueues;
+    private final RoomManager roomManager;
+    private final MailDispatcher mailDispatcher;
+    private final PasswordHashingService passwordHashing;
+    private final TurnServerPool turnServerPool;
+    private final SocketHandler socketHandler;
+    private final UserCache userCache;
 
-    public AdminController(AdminService adminService) {
+    // Максимум id в одном массовом запросе
+    @Value("${app.admin.bulk.max-ids:10000}")
+    private int bulkMaxIds;
+
+    public AdminController(AdminService adminService, OutboundQueueRegistry outboundQueues, RoomManager roomManager,
+                           MailDispatcher mailDispatcher, PasswordHashingService passwordHashing,
+                           TurnServerPool turnServerPool, SocketHandler socketHandler, UserCache userCache) {
         this.adminService = adminService;
+        this.outboundQueues = outboundQueues;
+        this.roomManager = roomManager;
+        this.mailDispatcher = mailDispatcher;
+        this.passwordHashing = passwordHashing;
+        this.turnServerPool = turnServerPool;
+        this.socketHandler = socketHandler;
+        this.userCache = userCache;
     }
 
+    /**
+     * Список пользователей постранично. Следующая страница запрашивается с {@code after=nextCursor}.
+     */
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(adminService.getAllUsers());
+    public ResponseEntity<UserPage> getUsers(@RequestParam(required = false) Long after,
+                                             @RequestParam(defaultValue = "100") int limit,
+                                             @RequestParam(required = false) UserRole role,
+                                             @RequestParam(required = false) UserActivate activation,
+                                             @RequestParam(required = false) String loginPrefix) {
+        return ResponseEntity.ok(adminService.listUsers(after, limit, role, activation, loginPrefix));
+    }
+
+    /**
+     * Выгрузка всех подходящих пользователей в NDJSON без загрузки списка в память.
+     */
+    @GetMapping(value = "/users/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(required = false) UserRole role,
+                                                             @RequestParam(required = false) UserActivate activation,
+                                                             @RequestParam(required = false) String loginPrefix) {
+        StreamingResponseBody body = out -> adminService.exportUsers(role, activation, loginPrefix, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     @PostMapping("/users/{id}/block")
     public ResponseEntity<?> blockUser(@PathVariable Long id) {
-        return adminService.blockUser(id)
-                .map(user -> ResponseEntity.ok().build())
-                .orElse(ResponseEntity.notFound().build());
+        if (adminService.blockUser(id) == BulkUpdateStatus.NOT_FOUND) {
+            return ResponseEntity.notFound().build();
+        }
+        socketHandler.disconnectUsers(List.of(id));
+        return ResponseEntity.ok().build();
     }
 
     @PostMapping("/users/{id}/unblock")
     public ResponseEntity<?> unblockUser(@PathVariable Long id) {
-        return adminService.unblockUser(id)
-                .map(user -> ResponseEntity.ok().build())
-                .orElse(ResponseEntity.notFound().build());
+        return adminService.unblockUser(id) == BulkUpdateStatus.NOT_FOUND
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok().build();
     }
 
     @PutMapping("/users/{id}/role")
     public ResponseEntity<?> changeUserRole(@PathVariable Long id, @RequestBody UserRole newRole) {
-        return adminService.changeUserRole(id, newRole)
-                .map(user -> ResponseEntity.ok().build())
-                .orElse(ResponseEntity.notFound().build());
+        return adminService.changeUserRole(id, newRole) == BulkUpdateStatus.NOT_FOUND
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok().build();
+    }
+
+    /**
+     * Массовая блокировка. Активные сеансы сигнализации заблокированных пользователей закрываются сразу.
+     */
+    @PostMapping("/users/bulk/block")
+    public ResponseEntity<List<BulkUpdateResult>> blockUsers(@RequestBody BulkUserRequest request) {
+        if (!isValidBulk(request)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<BulkUpdateResult> results = adminService.blockUsers(request.ids());
+        socketHandler.disconnectUsers(results.stream()
+                .filter(result -> result.status() != BulkUpdateStatus.NOT_FOUND)
+                .map(BulkUpdateResult::id)
+                .toList());
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping("/users/bulk/unblock")
+    public ResponseEntity<List<BulkUpdateResult>> unblockUsers(@RequestBody BulkUserRequest request) {
+        if (!isValidBulk(request)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(adminService.unblockUsers(request.ids()));
+    }
+
+    @PutMapping("/users/bulk/role")
+    public ResponseEntity<List<BulkUpdateResult>> changeUsersRole(@RequestBody BulkUserRequest request) {
+        if (!isValidBulk(request) || request.role() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(adminService.changeUsersRole(request.ids(), request.role()));
+    }
+
+    private boolean isValidBulk(BulkUserRequest request) {
+        return request.ids() != null && !request.ids().isEmpty() && request.ids().size() <= bulkMaxIds;
+    }
+
+    @GetMapping("/signaling/outbound")
+    public ResponseEntity<OutboundQueueStats> getOutboundQueueStats() {
+        return ResponseEntity.ok(outboundQueues.getStats());
+    }
+
+    @GetMapping("/signaling/rooms")
+    public ResponseEntity<RoomStats> getRoomStats() {
+        return ResponseEntity.ok(roomManager.getStats());
+    }
+
+    @GetMapping("/mail/queue")
+    public ResponseEntity<MailQueueStats> getMailQueueStats() {
+        return ResponseEntity.ok(mailDispatcher.getStats());
+    }
+
+    @GetMapping("/security/hashing")
+    public ResponseEntity<HashingStats> getHashingStats() {
+        return ResponseEntity.ok(passwordHashing.getStats());
+    }
+
+    @GetMapping("/cache/users")
+    public ResponseEntity<UserCacheStats> getUserCacheStats() {
+        return ResponseEntity.ok(userCache.getStats());
+    }
+
+    @GetMapping("/turn/servers")
+    public ResponseEntity<List<TurnServerStatus>> getTurnServers() {
+        return ResponseEntity.ok(turnServerPool.getStatus());
     }
 
     // TODO: Implement WebRTC configuration endpoints
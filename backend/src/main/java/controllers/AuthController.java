@@ -8,12 +8,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import repositories.UserRepository;
 import services.EmailService;
+import services.HashingOverloadedException;
 import services.JwtService;
+import services.PasswordHashingService;
 import services.TwoFactorAuthenticationService;
+import services.UserCache;
 import services.UserRegistration;
 
 import java.time.LocalDateTime;
@@ -28,7 +30,8 @@ public class AuthController {
 
     private final UserRegistration userRegistration;
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final PasswordHashingService passwordHashing;
     private final JwtService jwtService;
     private final SocketHandler socketHandler;
     private final TwoFactorAuthenticationService twoFactorAuthenticationService;
@@ -36,14 +39,16 @@ public class AuthController {
 
     public AuthController(UserRegistration userRegistration,
                           UserRepository userRepository,
-                          PasswordEncoder passwordEncoder,
+                          UserCache userCache,
+                          PasswordHashingService passwordHashing,
                           JwtService jwtService,
                           SocketHandler socketHandler,
                           TwoFactorAuthenticationService twoFactorAuthenticationService,
                           EmailService emailService) {
         this.userRegistration = userRegistration;
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        this.passwordHashing = passwordHashing;
         this.jwtService = jwtService;
         this.socketHandler = socketHandler;
         this.twoFactorAuthenticationService = twoFactorAuthenticationService;
@@ -52,12 +57,14 @@ public class AuthController {
 
     @PostMapping("/register")
     public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest request) {
-        if (userRepository.findByLogin(request.getLogin()).isPresent()) {
+        if (userCache.existsByLogin(request.getLogin())) {
             return ResponseEntity.badRequest().body("User with this login already exists");
         }
         try {
             userRegistration.registerNewUser(request.getUsername(), request.getLogin(), request.getPassword());
             return ResponseEntity.ok("Registration successful. Please check your email to verify your account.");
+        } catch (HashingOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -80,21 +87,22 @@ public class AuthController {
         user.setActivation(UserActivate.Enable);
         user.setVerificationToken(null);
         user.setVerificationTokenExpires(null);
-        userRepository.save(user);
+        userCache.save(user);
 
         return ResponseEntity.ok("Email verified successfully! You can now log in.");
     }
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@Valid @RequestBody LoginRequest request) {
-        Optional<User> userOptional = userRepository.findByLogin(request.getLogin());
+        Optional<User> userOptional = userCache.findByLogin(request.getLogin());
 
         if (userOptional.isPresent()) {
             User user = userOptional.get();
 
-            if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
+            if (!passwordHashing.matches(request.getPassword(), user.getPassword())) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Неправильный пароль");
             }
+            passwordHashing.upgradeIfNeeded(user.getId(), user.getPassword(), request.getPassword());
 
             if (user.getActivation() == UserActivate.Disable) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Account not activated. Please verify your email.");
@@ -120,7 +128,7 @@ public class AuthController {
 
     @PostMapping("/verify-2fa")
     public ResponseEntity<?> verify2fa(@Valid @RequestBody Verify2FARequest request) {
-        return userRepository.findByLogin(request.getLogin())
+        return userCache.findByLogin(request.getLogin())
                 .filter(user -> twoFactorAuthenticationService.isTwoFactorCodeValid(user, request.getCode()))
                 .map(user -> {
                     twoFactorAuthenticationService.clearTwoFactorCode(user);
@@ -133,12 +141,9 @@ public class AuthController {
     @GetMapping("/users/online")
     public ResponseEntity<List<OnlineUserResponse>> getOnlineUsers() {
         String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
-        List<Long> onlineUserIds = socketHandler.getOnlineUserIds().stream()
-                .collect(Collectors.toList());
-
-        List<OnlineUserResponse> onlineUsers = userRepository.findAllById(onlineUserIds).stream()
-                .filter(user -> !user.getLogin().equals(currentUsername))
-                .map(user -> new OnlineUserResponse(user.getId(), user.getUsername(), user.getLogin(), user.getRole().toString(), socketHandler.isUserInCall(user.getId())))
+        List<OnlineUserResponse> onlineUsers = socketHandler.getOnlineUsers().stream()
+                .filter(user -> !user.login().equals(currentUsername))
+                .map(user -> new OnlineUserResponse(user.id(), user.username(), user.login(), user.role(), socketHandler.isUserInCall(user.id())))
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(onlineUsers);
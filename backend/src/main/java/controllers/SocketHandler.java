@@ -1,10 +1,17 @@
 package controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import models.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import enums.ClusterMessageType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import models.ClusterMessage;
+import models.PresenceEntry;
+import models.RoomRoute;
+import models.SignalingMessage;
 import org.kurento.client.IceCandidate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,17 +21,30 @@ import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
-import repositories.UserRepository;
-import services.webrtc.Room;
+import services.cluster.ClusterBus;
+import services.cluster.ClusterDirectory;
+import services.cluster.RoomRouter;
+import services.signaling.CallStateRegistry;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.OutboundQueueRegistry;
+import services.signaling.PresenceBroadcaster;
+import services.signaling.PresenceIndex;
+import services.signaling.QueuedWebSocketSession;
+import services.signaling.SignalingMessageDecoder;
 import services.webrtc.RoomManager;
 import services.webrtc.UserRegistry;
 import services.webrtc.UserSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -34,30 +54,71 @@ import java.util.stream.Collectors;
 public class SocketHandler extends TextWebSocketHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketHandler.class);
-    private final Map<Long, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<Long, Boolean> userInCallStatus = new ConcurrentHashMap<>();
-    private final Map<Long, Long> userPeers = new ConcurrentHashMap<>(); // Карта для отслеживания пиров
-    private final Object callLock = new Object();
+    private final Map<Long, QueuedWebSocketSession> sessions = new ConcurrentHashMap<>();
+    // Соединения mode=room: пользователь пришел сюда только ради комнаты, его основное соединение на другом узле
+    private final Map<Long, QueuedWebSocketSession> roomSessions = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
-    private final UserRepository userRepository;
+    private final SignalingMessageDecoder decoder;
+    private final PresenceBroadcaster presenceBroadcaster;
+    private final OutboundQueueRegistry outboundQueues;
+    private final CallStateRegistry callStates;
+    private final PresenceIndex presenceIndex;
+    private final IceCandidateBatcher iceBatcher;
+    private final ClusterBus clusterBus;
+    private final ClusterDirectory clusterDirectory;
+    private final MeterRegistry meterRegistry;
+    // Тип сообщения -> таймер signaling.relay
+    private final Map<Class<?>, Timer> relayTimers = new ConcurrentHashMap<>();
 
     @Autowired
     private RoomManager roomManager;
 
     @Autowired
     private UserRegistry registry;
-    private static final Gson gson = new GsonBuilder().create();
+
+    @Autowired
+    private RoomRouter roomRouter;
 
 
     /**
      * Конструктор для внедрения зависимостей. @param objectMapper-объект для сопоставления JSON.
      *
-     * @param userRepository
+     * @param decoder             Декодер входящих сообщений сигнализации.
+     * @param presenceBroadcaster Рассылка изменений присутствия.
+     * @param outboundQueues      Реестр исходящих очередей сеансов.
+     * @param callStates          Состояния P2P-звонков.
+     * @param presenceIndex       Индекс онлайн-пользователей.
+     * @param iceBatcher          Пакетная пересылка ICE-кандидатов.
+     * @param clusterBus          Шина для пересылки сообщений пользователям других узлов.
+     * @param clusterDirectory    Пользователи других узлов.
+     * @param meterRegistry       Реестр метрик.
      */
     public SocketHandler(ObjectMapper objectMapper,
-                         UserRepository userRepository) {
+                         SignalingMessageDecoder decoder,
+                         PresenceBroadcaster presenceBroadcaster,
+                         OutboundQueueRegistry outboundQueues,
+                         CallStateRegistry callStates,
+                         PresenceIndex presenceIndex,
+                         IceCandidateBatcher iceBatcher,
+                         ClusterBus clusterBus,
+                         ClusterDirectory clusterDirectory,
+                         MeterRegistry meterRegistry) {
         this.objectMapper = objectMapper;
-        this.userRepository = userRepository;
+        this.decoder = decoder;
+        this.presenceBroadcaster = presenceBroadcaster;
+        this.outboundQueues = outboundQueues;
+        this.callStates = callStates;
+        this.presenceIndex = presenceIndex;
+        this.iceBatcher = iceBatcher;
+        this.clusterBus = clusterBus;
+        this.clusterDirectory = clusterDirectory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void subscribeCluster() {
+        clusterBus.subscribe(this::onClusterMessage);
+        clusterDirectory.onUsersLost(this::releaseCallsWith);
     }
 
     /**
@@ -76,26 +137,41 @@ public class SocketHandler extends TextWebSocketHandler {
             }
             return;
         }
-        sessions.put(userId, session);
-        userInCallStatus.put(userId, false); // Инициализация статуса звонка
+        if (isRoomOnly(session)) {
+            roomSessions.put(userId, outboundQueues.register(session));
+            logger.info("[Connected] User ID: {} (room only)", userId);
+            return;
+        }
+        PresenceEntry presence = new PresenceEntry(userId,
+                (String) session.getAttributes().get("username"),
+                (String) session.getAttributes().get("login"),
+                (String) session.getAttributes().get("role"));
+        QueuedWebSocketSession outbound = outboundQueues.register(session);
+        presenceIndex.add(presence);
+        sessions.put(userId, outbound);
+        callStates.register(userId); // Инициализация статуса звонка
         logger.info("[Connected] User ID: {}", userId);
 
         // Уведомляем нового пользователя о его успещном подключении и отправляем ему список всех пользователей онлайн
-        List<User> onlineUsers = userRepository.findAllById(sessions.keySet());
-        List<Map<String, Object>> usersMap = onlineUsers.stream()
+        List<Map<String, Object>> usersMap = getOnlineUsers().stream()
                 .map(user -> {
                     Map<String, Object> userMap = new HashMap<>();
-                    userMap.put("id", user.getId());
-                    userMap.put("username", user.getUsername());
-                    userMap.put("inCall", userInCallStatus.getOrDefault(user.getId(), false));
+                    userMap.put("id", user.id());
+                    userMap.put("username", user.username());
+                    userMap.put("inCall", isUserInCall(user.id()));
                     return userMap;
                 })
                 .collect(Collectors.toList());
 
-        sendMessage(session, Map.of("type", "connection-success", "data", usersMap, "myId", userId));
+        // Подтверждаем клиенту возможности протокола, которые сервер будет использовать
+        List<String> features = iceBatcher.isEnabledFor(session) ? List.of(IceCandidateBatcher.FEATURE) : List.of();
+        sendMessage(outbound, Map.of("type", "connection-success", "data", usersMap, "myId", userId,
+                "features", features));
 
         // Уведомляем всех остальных пользователей о новом подключенном пользователе
-        broadcast(Map.of("type", "user-connected", "userId", userId, "username", userRepository.findById(userId).get().getUsername()));
+        presenceBroadcaster.subscribe(outbound);
+        presenceBroadcaster.userConnected(userId, presence.username());
+        clusterDirectory.userConnected(presence);
     }
 
 
@@ -108,60 +184,41 @@ public class SocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws IOException {
         Long userId = getUserId(session);
-        if (userId != null) {
-            synchronized (callLock) {
-                // Если пользователь был в звонке, уведомляем его собеседника
-                if (userPeers.containsKey(userId)) {
-                    Long peerId = userPeers.get(userId);
-                    WebSocketSession peerSession = sessions.get(peerId);
-                    if (peerSession != null && peerSession.isOpen()) {
-                        sendMessage(peerSession, Map.of("type", "hang-up", "from", userId));
-                    }
-                    userPeers.remove(peerId);
-                    userInCallStatus.put(peerId, false);
-                    broadcast(Map.of("type", "user-in-call-status-changed", "userId", peerId, "inCall", false));
-
+        QueuedWebSocketSession outbound = outboundQueues.get(session);
+        presenceBroadcaster.unsubscribe(session);
+        outboundQueues.unregister(session);
+        if (userId != null && outbound != null) {
+            roomSessions.remove(userId, outbound);
+        }
+        // Сеанс мог быть уже заменен новым подключением того же пользователя
+        if (userId != null && outbound != null && sessions.remove(userId, outbound)) {
+            presenceIndex.remove(userId);
+            // Если пользователь был в звонке, уведомляем его собеседника
+            Long callPeerId = callStates.get(userId).peerId();
+            Long peerId = callStates.disconnect(userId);
+            if (peerId != null) {
+                QueuedWebSocketSession peerSession = sessions.get(peerId);
+                if (peerSession != null && peerSession.isOpen()) {
+                    sendMessage(peerSession, Map.of("type", "hang-up", "from", userId));
                 }
-
-                sessions.remove(userId);
-                userInCallStatus.remove(userId); // Удаление статуса звонка
-                userPeers.remove(userId);
+                inCallStatusChanged(peerId, false);
+            } else if (callPeerId != null) {
+                // Собеседник на другом узле освобождается своим узлом
+                relay(callPeerId, ClusterMessageType.HANG_UP, userId, null);
             }
 
             logger.info("[Disconnected] User ID: {}", userId);
 
             // Уведомляем всех остальных пользователей об отключении
-            broadcast(Map.of("type", "user-disconnected", "userId", userId));
+            presenceBroadcaster.userDisconnected(userId);
+            clusterDirectory.userDisconnected(userId);
         }
         UserSession user = registry.removeBySession(session);
         if (user != null) {
-            Room room = roomManager.getRoom(user.getRoomName());
-            room.leave(user);
+            roomManager.leave(user);
         }
     }
 
-    private void broadcast(Map<String, Object> message) {
-        String jsonMessage;
-        try {
-            jsonMessage = objectMapper.writeValueAsString(message);
-        } catch (IOException e) {
-            logger.error("Error serializing broadcast message", e);
-            return;
-        }
-
-        sessions.values().forEach(session -> {
-            try {
-                synchronized (session) {
-                    if (session.isOpen()) {
-                        session.sendMessage(new TextMessage(jsonMessage));
-                    }
-                }
-            } catch (IOException e) {
-                logger.error("Error broadcasting message to session {}: {}", session.getId(), e.getMessage());
-            }
-        });
-    }
-
     /**
      * Обрабатывает входящие текстовые сообщения WebSocket.
      *
@@ -171,219 +228,390 @@ public class SocketHandler extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         Long fromUserId = getUserId(session);
-        if (fromUserId == null) return;
+        QueuedWebSocketSession outbound = outboundQueues.get(session);
+        if (fromUserId == null || outbound == null) return;
 
-        JsonObject jsonMessage = gson.fromJson(message.getPayload(), JsonObject.class);
-        final UserSession user = registry.getBySession(session);
-        if (user != null) {
-            logger.debug("Incoming message from user '{}': {}", user.getName(), jsonMessage);
-        } else {
-            logger.debug("Incoming message from new user: {}", jsonMessage);
+        long receivedAt = System.nanoTime();
+        try {
+            SignalingMessage signal = decoder.decode(message.getPayload());
+            if (signal instanceof SignalingMessage.PeerMessage peerMessage) {
+                if (isRoomOnly(session)) {
+                    logger.debug("Ignoring peer message on room-only session of user {}", fromUserId);
+                    return;
+                }
+                logger.debug("Incoming message from user {}: {}", fromUserId, peerMessage);
+                handlePeerMessage(outbound, fromUserId, peerMessage);
+            } else if (signal instanceof SignalingMessage.RoomMessage roomMessage) {
+                final UserSession user = registry.getBySession(session);
+                if (user != null) {
+                    logger.debug("Incoming message from user '{}': {}", user.getName(), roomMessage);
+                } else {
+                    logger.debug("Incoming message from new user: {}", roomMessage);
+                }
+                handleRoomMessage(outbound, user, roomMessage);
+            }
+            relayTimer(signal).record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            logger.error("IO error handling message from user {}: {}", fromUserId, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Unexpected error handling message from user {}: {}", fromUserId, e.getMessage(), e);
         }
+    }
 
+    // Время от получения кадра до постановки ответов в исходящие очереди (вызовы Kurento идут асинхронно)
+    private Timer relayTimer(SignalingMessage signal) {
+        return relayTimers.computeIfAbsent(signal.getClass(), type -> Timer.builder("signaling.relay")
+                .description("Time to decode and dispatch an incoming signaling message")
+                .tag("type", type.getSimpleName())
+                .register(meterRegistry));
+    }
 
-        try {
-            Map<String, Object> payload = objectMapper.readValue(message.getPayload(), HashMap.class);
-            String type = (String) payload.get("type");
-
-            if (type != null) {
-                Long toUserId = getToUserId(payload.get("to"));
+    private void handlePeerMessage(QueuedWebSocketSession session, Long fromUserId, SignalingMessage.PeerMessage message) {
+        Long toUserId = message.to();
+        if (toUserId == null) {
+            logger.warn("Recipient user ID ('to') is missing or invalid in payload: {}", message);
+            return; // Или отправить ошибку отправителю
+        }
 
-                if (toUserId == null) {
-                    logger.warn("Recipient user ID ('to') is missing or invalid in payload: {}", payload);
-                    return; // Или отправить ошибку отправителю
-                }
+        QueuedWebSocketSession recipient = sessions.get(toUserId);
+        if ((recipient == null || !recipient.isOpen()) && clusterDirectory.locate(toUserId) != null) {
+            handleRemotePeerMessage(session, fromUserId, toUserId, message);
+            return;
+        }
+        if (recipient == null || !recipient.isOpen()) {
+            logger.warn("Recipient User ID {} not found or session is closed", toUserId);
+            // Можно отправить сообщение об ошибке отправителю
+            sendMessage(session, Map.of("type", "error", "message", "User " + toUserId + " is not online."));
+            return;
+        }
 
+        switch (message) {
+            case SignalingMessage.CallUser callUser -> handleCallUser(session, fromUserId, toUserId, callUser, recipient);
+            case SignalingMessage.MakeAnswer makeAnswer -> handleMakeAnswer(fromUserId, toUserId, makeAnswer, recipient);
+            case SignalingMessage.PeerIceCandidate candidate -> handleIceCandidate(fromUserId, toUserId, candidate, recipient);
+            case SignalingMessage.HangUp hangUp -> handleHangUp(fromUserId, toUserId, recipient);
+            case SignalingMessage.TurnRenegotiation renegotiation ->
+                    sendMessage(recipient, Map.of("type", "request-turn-renegotiation", "from", fromUserId));
+            case SignalingMessage.UnknownPeerMessage unknown -> logger.warn("Unknown message type: {}", unknown.type());
+        }
+    }
 
-                WebSocketSession recipient = sessions.get(toUserId);
-                if (recipient == null || !recipient.isOpen()) {
-                    logger.warn("Recipient User ID {} not found or session is closed", toUserId);
-                    // Можно отправить сообщение об ошибке отправителю
-                    sendMessage(session, Map.of("type", "error", "message", "User " + toUserId + " is not online."));
-                    return;
+    private void handleRoomMessage(QueuedWebSocketSession session, UserSession user, SignalingMessage.RoomMessage message) throws IOException {
+        switch (message) {
+            case SignalingMessage.JoinRoom joinRoom -> joinRoom(joinRoom, session);
+            case SignalingMessage.ReceiveVideoFrom receiveVideoFrom -> {
+                final UserSession sender = registry.getBySession(session);
+                if (sender != null) {
+                    user.receiveVideoFrom(sender, receiveVideoFrom.sdpOffer())
+                            .exceptionally(e -> {
+                                logger.error("PARTICIPANT {}: could not receive video from {}: {}",
+                                        user.getName(), receiveVideoFrom.sender(), e.getMessage(), e);
+                                return null;
+                            });
                 }
-
-                switch (type) {
-                    case "call-user":
-                        handleCallUser(session, fromUserId, toUserId, payload, recipient);
-                        break;
-                    case "make-answer":
-                        handleMakeAnswer(fromUserId, toUserId, payload, recipient);
-                        break;
-                    case "ice-candidate":
-                        handleIceCandidate(fromUserId, toUserId, payload, recipient);
-                        break;
-                    case "hang-up":
-                        handleHangUp(fromUserId, toUserId, recipient);
-                        break;
-                    case "request-turn-renegotiation":
-                        sendMessage(recipient, Map.of("type", "request-turn-renegotiation", "from", fromUserId));
-                        break;
-                    default:
-                        logger.warn("Unknown message type: {}", type);
+            }
+            case SignalingMessage.LeaveRoom leaveRoom -> {
+                if (user != null) {
+                    registry.removeBySession(session);
+                    roomManager.leave(user);
                 }
-            } else {
-                switch (jsonMessage.get("id").getAsString()) {
-                    case "joinRoom":
-                        joinRoom(jsonMessage, session);
-                        break;
-                    case "receiveVideoFrom":
-                        final String senderName = jsonMessage.get("sender").getAsString();
-                        final UserSession sender = registry.getBySession(session);
-                        final String sdpOffer = jsonMessage.get("sdpOffer").getAsString();
-                        if (sender != null) {
-                            user.receiveVideoFrom(sender, sdpOffer);
-                        }
-                        break;
-                    case "leaveRoom":
-                        leaveRoom(user);
-                        break;
-                    case "onIceCandidate":
-                        JsonObject candidate = jsonMessage.get("candidate").getAsJsonObject();
-
-                        if (user != null) {
-                            IceCandidate cand = new IceCandidate(candidate.get("candidate").getAsString(),
-                                    candidate.get("sdpMid").getAsString(), candidate.get("sdpMLineIndex").getAsInt());
-                            user.addCandidate(cand, jsonMessage.get("name").getAsString());
-                        }
-                        break;
-                    default:
-                        break;
+            }
+            case SignalingMessage.RoomIceCandidate candidate -> {
+                if (user != null) {
+                    IceCandidate cand = new IceCandidate(candidate.candidate(), candidate.sdpMid(), candidate.sdpMLineIndex());
+                    user.addCandidate(cand, candidate.name());
                 }
             }
-        } catch (IOException e) {
-            logger.error("IO error handling message from user {}: {}", fromUserId, e.getMessage());
-        } catch (Exception e) {
-            logger.error("Unexpected error handling message from user {}: {}", fromUserId, e.getMessage(), e);
+            case SignalingMessage.UnknownRoomMessage unknown -> logger.debug("Unknown room message id: {}", unknown.id());
         }
     }
 
-    private void joinRoom(JsonObject params, WebSocketSession session) throws IOException {
-        final String roomName = params.get("room").getAsString();
-        final String name = params.get("name").getAsString();
+    private void joinRoom(SignalingMessage.JoinRoom params, QueuedWebSocketSession session) {
+        final String roomName = params.room();
+        final String name = params.name();
         logger.info("PARTICIPANT {}: trying to join room {}", name, roomName);
 
-        Room room = roomManager.getRoom(roomName);
-        final UserSession user = room.join(name, session);
-        registry.register(user);
+        // Все участники комнаты должны быть на узле с ее конвейером. Флаг redirected присылает клиент,
+        // поэтому он не отменяет проверку: комната обслуживается здесь, только если узел ею владеет
+        RoomRoute route = roomRouter.route(roomName);
+        if (route != null) {
+            if (params.redirected() && isRoomOnly(session)) {
+                // Узлы расходятся во владельце комнаты, пока кольцо перестраивается
+                logger.warn("PARTICIPANT {}: redirected to node that does not own room {}", name, roomName);
+            }
+            logger.info("PARTICIPANT {}: room {} is served by node {}, redirecting", name, roomName, route.node());
+            sendMessage(session, Map.of("id", "roomRedirect", "room", roomName,
+                    "node", route.node(), "url", route.url()));
+            return;
+        }
+
+        roomManager.join(roomName, name, session, registry::register)
+                .thenAccept(user -> {
+                    // Сеанс мог закрыться, пока комната создавалась
+                    if (!session.isOpen() && registry.removeBySession(session) != null) {
+                        leaveClosedSession(user);
+                    }
+                })
+                .exceptionally(e -> {
+                    if (RoomManager.isCancelled(e)) {
+                        logger.debug("PARTICIPANT {}: left room {} before joining", name, roomName);
+                    } else {
+                        logger.error("PARTICIPANT {}: could not join room {}: {}", name, roomName, e.getMessage(), e);
+                    }
+                    return null;
+                });
     }
 
-    private void leaveRoom(UserSession user) throws IOException {
-        final Room room = roomManager.getRoom(user.getRoomName());
-        room.leave(user);
-        if (room.getParticipants().isEmpty()) {
-            roomManager.removeRoom(room);
+    private void leaveClosedSession(UserSession user) {
+        try {
+            roomManager.leave(user);
+        } catch (IOException e) {
+            logger.debug("PARTICIPANT {}: error leaving room {}: {}", user.getName(), user.getRoomName(), e.getMessage());
         }
     }
 
 
-    private void handleCallUser(WebSocketSession fromSession, Long fromUserId, Long toUserId, Map<String, Object> payload, WebSocketSession recipient) {
-        synchronized (callLock) {
-            if (userInCallStatus.getOrDefault(toUserId, false)) {
-                sendMessage(fromSession, Map.of("type", "call-rejected", "reason", "User is already in a call."));
-            } else {
-                // Помечаем обоих пользователей как "в звонке"
-                userInCallStatus.put(fromUserId, true);
-                userInCallStatus.put(toUserId, true);
-                //Связываем пользователей в звонке
-                userPeers.put(fromUserId, toUserId);
-                userPeers.put(toUserId, fromUserId);
-
-
-                // Уведомляем всех о том что пользователи в звонке
-                broadcast(Map.of("type", "user-in-call-status-changed", "userId", fromUserId, "inCall", true));
-                broadcast(Map.of("type", "user-in-call-status-changed", "userId", toUserId, "inCall", true));
-
-
-                // Пересылаем предложение, добавляя от кого оно
-                Object offer = payload.get("offer");
-                Map<String, Object> messageMap = new HashMap<>();
-                messageMap.put("type", "call-made");
-                messageMap.put("offer", offer);
-                messageMap.put("from", fromUserId);
-                // Forward the useTurn flag if it exists
-                if (payload.containsKey("useTurn")) {
-                    messageMap.put("useTurn", payload.get("useTurn"));
-                }
-                sendMessage(recipient, messageMap);
-            }
+    private void handleCallUser(QueuedWebSocketSession fromSession, Long fromUserId, Long toUserId, SignalingMessage.CallUser callUser, QueuedWebSocketSession recipient) {
+        // Помечаем обоих пользователей как "в звонке", если оба свободны
+        if (!callStates.startCall(fromUserId, toUserId)) {
+            sendMessage(fromSession, Map.of("type", "call-rejected", "reason", "User is already in a call."));
+            return;
         }
+
+        // Уведомляем всех о том что пользователи в звонке
+        inCallStatusChanged(fromUserId, true);
+        inCallStatusChanged(toUserId, true);
+
+        // Пересылаем предложение, добавляя от кого оно
+        sendMessage(recipient, callMade(fromUserId, callUser));
     }
 
-    private void handleMakeAnswer(Long fromUserId, Long toUserId, Map<String, Object> payload, WebSocketSession recipient) {
-        if (!userPeers.containsKey(fromUserId) || !userPeers.get(fromUserId).equals(toUserId)) {
+    private ObjectNode callMade(Long fromUserId, SignalingMessage.CallUser callUser) {
+        ObjectNode messageNode = objectMapper.createObjectNode();
+        messageNode.put("type", "call-made");
+        messageNode.set("offer", callUser.offer());
+        messageNode.put("from", fromUserId);
+        // Forward the useTurn flag if it exists
+        if (callUser.useTurn() != null) {
+            messageNode.set("useTurn", callUser.useTurn());
+        }
+        return messageNode;
+    }
+
+    private void handleMakeAnswer(Long fromUserId, Long toUserId, SignalingMessage.MakeAnswer makeAnswer, QueuedWebSocketSession recipient) {
+        if (!callStates.answer(fromUserId, toUserId)) {
             logger.warn("User {} is not in a call with user {}", fromUserId, toUserId);
             return;
         }
         // Просто пересылаем ответ
-        Object answer = payload.get("answer");
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("type", "answer-made");
-        messageMap.put("answer", answer);
-        messageMap.put("from", fromUserId);
+        sendMessage(recipient, answerMade(fromUserId, makeAnswer));
+    }
+
+    private ObjectNode answerMade(Long fromUserId, SignalingMessage.MakeAnswer makeAnswer) {
+        ObjectNode messageNode = objectMapper.createObjectNode();
+        messageNode.put("type", "answer-made");
+        messageNode.set("answer", makeAnswer.answer());
+        messageNode.put("from", fromUserId);
         // Forward the useTurn flag if it exists
-        if (payload.containsKey("useTurn")) {
-            messageMap.put("useTurn", payload.get("useTurn"));
+        if (makeAnswer.useTurn() != null) {
+            messageNode.set("useTurn", makeAnswer.useTurn());
         }
-        sendMessage(recipient, messageMap);
+        return messageNode;
     }
 
-    private void handleIceCandidate(Long fromUserId, Long toUserId, Map<String, Object> payload, WebSocketSession recipient) {
-        if (!userPeers.containsKey(fromUserId) || !userPeers.get(fromUserId).equals(toUserId)) {
+    private void handleIceCandidate(Long fromUserId, Long toUserId, SignalingMessage.PeerIceCandidate candidate, QueuedWebSocketSession recipient) {
+        if (!callStates.isPeer(fromUserId, toUserId)) {
             logger.warn("User {} is not in a call with user {}", fromUserId, toUserId);
             return;
         }
+        deliverIceCandidate(recipient, fromUserId, candidate.candidate());
+    }
+
+    private void deliverIceCandidate(QueuedWebSocketSession recipient, Long fromUserId, JsonNode candidate) {
+        if (iceBatcher.isEnabledFor(recipient)) {
+            iceBatcher.addPeerCandidate(recipient, fromUserId, candidate);
+            return;
+        }
         // Просто пересылаем ICE-кандидата
-        Object candidate = payload.get("candidate");
-        sendMessage(recipient, Map.of("type", "ice-candidate", "candidate", candidate, "from", fromUserId));
+        ObjectNode messageNode = objectMapper.createObjectNode();
+        messageNode.put("type", "ice-candidate");
+        messageNode.set("candidate", candidate);
+        messageNode.put("from", fromUserId);
+        sendMessage(recipient, messageNode, true);
     }
 
-    private void handleHangUp(Long fromUserId, Long toUserId, WebSocketSession recipient) {
-        synchronized (callLock) {
-            // Сбрасываем статус "в звонке" для обоих пользователей
-            userInCallStatus.put(fromUserId, false);
-            userInCallStatus.put(toUserId, false);
+    private void handleHangUp(Long fromUserId, Long toUserId, QueuedWebSocketSession recipient) {
+        // Сбрасываем статус "в звонке" обоих, только если они связаны друг с другом
+        if (!callStates.hangUp(fromUserId, toUserId)) {
+            logger.warn("User {} is not in a call with user {}", fromUserId, toUserId);
+            return;
+        }
 
-            // Убираем связь
-            userPeers.remove(fromUserId);
-            userPeers.remove(toUserId);
+        // Уведомляем всех о том что пользователи не в звонке
+        inCallStatusChanged(fromUserId, false);
+        inCallStatusChanged(toUserId, false);
 
-            // Уведомляем всех о том что пользователи не в звонке
-            broadcast(Map.of("type", "user-in-call-status-changed", "userId", fromUserId, "inCall", false));
-            broadcast(Map.of("type", "user-in-call-status-changed", "userId", toUserId, "inCall", false));
+        // Уведомляем другого пользователя о завершении звонка
+        sendMessage(recipient, Map.of("type", "hang-up", "from", fromUserId));
+    }
 
-            // Уведомляем другого пользователя о завершении звонка
-            sendMessage(recipient, Map.of("type", "hang-up", "from", fromUserId));
+    /**
+     * Сигнализация пользователю другого узла. Каждый узел меняет состояние звонка только
+     * своих пользователей: здесь - отправителя, получателя - узел получателя.
+     */
+    private void handleRemotePeerMessage(QueuedWebSocketSession session, Long fromUserId, Long toUserId,
+                                         SignalingMessage.PeerMessage message) {
+        switch (message) {
+            case SignalingMessage.CallUser callUser -> {
+                if (!callStates.reserve(fromUserId, toUserId)) {
+                    sendMessage(session, Map.of("type", "call-rejected", "reason", "User is already in a call."));
+                    return;
+                }
+                inCallStatusChanged(fromUserId, true);
+                relay(toUserId, ClusterMessageType.CALL_USER, fromUserId, callMade(fromUserId, callUser));
+            }
+            case SignalingMessage.MakeAnswer makeAnswer -> {
+                if (!callStates.accept(fromUserId, toUserId)) {
+                    logger.warn("User {} is not in a call with user {}", fromUserId, toUserId);
+                    return;
+                }
+                relay(toUserId, ClusterMessageType.MAKE_ANSWER, fromUserId, answerMade(fromUserId, makeAnswer));
+            }
+            case SignalingMessage.PeerIceCandidate candidate -> {
+                if (!callStates.isPeer(fromUserId, toUserId)) {
+                    logger.warn("User {} is not in a call with user {}", fromUserId, toUserId);
+                    return;
+                }
+                relay(toUserId, ClusterMessageType.ICE_CANDIDATE, fromUserId, candidate.candidate());
+            }
+            case SignalingMessage.HangUp hangUp -> {
+                if (callStates.release(fromUserId, toUserId)) {
+                    inCallStatusChanged(fromUserId, false);
+                }
+                relay(toUserId, ClusterMessageType.HANG_UP, fromUserId, null);
+            }
+            case SignalingMessage.TurnRenegotiation renegotiation ->
+                    relay(toUserId, ClusterMessageType.TURN_RENEGOTIATION, fromUserId, null);
+            case SignalingMessage.UnknownPeerMessage unknown -> logger.warn("Unknown message type: {}", unknown.type());
         }
     }
 
+    // Сообщение узлу, к которому подключен пользователь; если пользователь уже отключился, оно не отправляется
+    private void relay(Long toUserId, ClusterMessageType type, Long fromUserId, JsonNode payload) {
+        String node = clusterDirectory.locate(toUserId);
+        if (node != null) {
+            clusterBus.send(node, new ClusterMessage(type, clusterBus.getNodeId(), fromUserId, toUserId, payload));
+        }
+    }
 
-    private Long getToUserId(Object toValue) {
-        if (toValue instanceof String) {
-            try {
-                return Long.parseLong((String) toValue);
-            } catch (NumberFormatException e) {
-                return null;
+    /**
+     * Сообщение другого узла пользователю этого узла.
+     */
+    private void onClusterMessage(ClusterMessage message) {
+        if (message.type() == ClusterMessageType.DISCONNECT_USERS) {
+            List<Long> userIds = new ArrayList<>();
+            message.payload().forEach(id -> userIds.add(id.asLong()));
+            closeSessions(userIds);
+            return;
+        }
+        Long toUserId = message.to();
+        Long fromUserId = message.from();
+        if (toUserId == null || fromUserId == null) {
+            return; // Присутствие обрабатывает ClusterDirectory
+        }
+        QueuedWebSocketSession recipient = sessions.get(toUserId);
+        boolean online = recipient != null && recipient.isOpen();
+        switch (message.type()) {
+            case CALL_USER -> {
+                if (!online || !callStates.reserve(toUserId, fromUserId)) {
+                    String reason = online ? "User is already in a call." : "User " + toUserId + " is not online.";
+                    clusterBus.send(message.node(), new ClusterMessage(ClusterMessageType.CALL_REJECTED,
+                            clusterBus.getNodeId(), toUserId, fromUserId, objectMapper.getNodeFactory().textNode(reason)));
+                    return;
+                }
+                inCallStatusChanged(toUserId, true);
+                sendMessage(recipient, message.payload());
+            }
+            case CALL_REJECTED -> {
+                if (callStates.release(toUserId, fromUserId)) {
+                    inCallStatusChanged(toUserId, false);
+                    if (online) {
+                        sendMessage(recipient, Map.of("type", "call-rejected", "reason", message.payload().asText()));
+                    }
+                }
+            }
+            case MAKE_ANSWER -> {
+                if (online && callStates.accept(toUserId, fromUserId)) {
+                    sendMessage(recipient, message.payload());
+                }
+            }
+            case ICE_CANDIDATE -> {
+                if (online && callStates.isPeer(toUserId, fromUserId)) {
+                    deliverIceCandidate(recipient, fromUserId, message.payload());
+                }
+            }
+            case HANG_UP -> {
+                if (callStates.release(toUserId, fromUserId)) {
+                    inCallStatusChanged(toUserId, false);
+                    if (online) {
+                        sendMessage(recipient, Map.of("type", "hang-up", "from", fromUserId));
+                    }
+                }
+            }
+            case TURN_RENEGOTIATION -> {
+                if (online) {
+                    sendMessage(recipient, Map.of("type", "request-turn-renegotiation", "from", fromUserId));
+                }
+            }
+            default -> logger.debug("Unexpected cluster message {} for user {}", message.type(), toUserId);
+        }
+    }
+
+    // Звонки с пользователями пропавшего узла завершаются так, будто собеседник положил трубку
+    private void releaseCallsWith(Set<Long> lostUserIds) {
+        for (Long userId : callStates.findPeersOf(lostUserIds)) {
+            Long peerId = callStates.get(userId).peerId();
+            if (peerId != null && callStates.release(userId, peerId)) {
+                inCallStatusChanged(userId, false);
+                QueuedWebSocketSession session = sessions.get(userId);
+                if (session != null && session.isOpen()) {
+                    sendMessage(session, Map.of("type", "hang-up", "from", peerId));
+                }
             }
-        } else if (toValue instanceof Number) {
-            return ((Number) toValue).longValue();
         }
-        return null;
     }
 
+    // Статус звонка пользователя этого узла рассылается локальным клиентам и остальным узлам
+    private void inCallStatusChanged(Long userId, boolean inCall) {
+        presenceBroadcaster.inCallStatusChanged(userId, inCall);
+        clusterDirectory.inCallStatusChanged(userId, inCall);
+    }
+
+
     /**
      * Отправляет сообщение JSON указанному сеансу.
      *
      * @param session Сеанс для отправки сообщения.
      * @param payload Данные для отправки.
      */
-    private void sendMessage(WebSocketSession session, Object payload) {
+    private void sendMessage(QueuedWebSocketSession session, Object payload) {
+        sendMessage(session, payload, false);
+    }
+
+    /**
+     * Ставит сообщение JSON в исходящую очередь сеанса.
+     *
+     * @param session   Сеанс для отправки сообщения.
+     * @param payload   Данные для отправки.
+     * @param droppable Можно ли отбросить сообщение при переполнении очереди.
+     */
+    private void sendMessage(QueuedWebSocketSession session, Object payload, boolean droppable) {
         try {
-            String json = objectMapper.writeValueAsString(payload);
-            synchronized (session) { // Синхронизация для потокобезопасности
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(json));
-                }
+            TextMessage message = new TextMessage(objectMapper.writeValueAsString(payload));
+            if (droppable) {
+                session.sendDroppable(message);
+            } else {
+                session.sendMessage(message);
             }
         } catch (IOException e) {
             logger.error("Failed to send message to User ID {}: {}", getUserId(session), e.getMessage(), e);
@@ -395,15 +623,57 @@ public class SocketHandler extends TextWebSocketHandler {
         return (Long) session.getAttributes().get("userId");
     }
 
-    public java.util.Set<Long> getOnlineUserIds() {
+    private static boolean isRoomOnly(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get("roomOnly"));
+    }
+
+    /**
+     * Закрывает активные сеансы пользователей на всех узлах, например после блокировки.
+     * Остальная очистка выполняется в afterConnectionClosed.
+     *
+     * @param userIds Идентификаторы пользователей.
+     * @return Число закрытых сеансов.
+     */
+    public int disconnectUsers(Collection<Long> userIds) {
+        ArrayNode ids = objectMapper.createArrayNode();
+        userIds.forEach(ids::add);
+        clusterBus.publish(new ClusterMessage(ClusterMessageType.DISCONNECT_USERS, clusterBus.getNodeId(), null, null, ids));
+        return closeSessions(userIds);
+    }
+
+    private int closeSessions(Collection<Long> userIds) {
+        int closed = 0;
+        for (Long userId : userIds) {
+            for (QueuedWebSocketSession session : new QueuedWebSocketSession[]{sessions.get(userId), roomSessions.get(userId)}) {
+                if (session == null || !session.isOpen()) {
+                    continue;
+                }
+                try {
+                    session.close(CloseStatus.POLICY_VIOLATION.withReason("Account disabled"));
+                    closed++;
+                } catch (IOException e) {
+                    logger.debug("Error closing session of User ID {}: {}", userId, e.getMessage());
+                }
+            }
+        }
+        return closed;
+    }
+
+    public Set<Long> getOnlineUserIds() {
         return sessions.keySet();
     }
 
-    public boolean isUserInCall(Long userId) {
-        return userInCallStatus.getOrDefault(userId, false);
+    /**
+     * Онлайн-пользователи всех узлов кластера.
+     */
+    public Collection<PresenceEntry> getOnlineUsers() {
+        Map<Long, PresenceEntry> online = new LinkedHashMap<>();
+        clusterDirectory.getRemoteUsers().forEach(user -> online.put(user.id(), user));
+        presenceIndex.getAll().forEach(user -> online.put(user.id(), user));
+        return online.values();
     }
 
-    public void setUserInCallStatus(Long userId, boolean inCall) {
-        userInCallStatus.put(userId, inCall);
+    public boolean isUserInCall(Long userId) {
+        return callStates.isInCall(userId) || clusterDirectory.isRemoteInCall(userId);
     }
 }
\ No newline at end of file
@@ -8,32 +8,32 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import repositories.UserRepository;
 import services.TwoFactorAuthenticationService;
+import services.UserCache;
 
 @RestController
 @RequestMapping("/api/user")
 public class UserController {
 
     private final TwoFactorAuthenticationService twoFactorAuthenticationService;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
-    public UserController(TwoFactorAuthenticationService twoFactorAuthenticationService, UserRepository userRepository) {
+    public UserController(TwoFactorAuthenticationService twoFactorAuthenticationService, UserCache userCache) {
         this.twoFactorAuthenticationService = twoFactorAuthenticationService;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
     @PostMapping("/2fa/toggle")
     public ResponseEntity<Toggle2FAResponse> toggle2FA() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String currentPrincipalName = authentication.getName();
-        User user = userRepository.findByLogin(currentPrincipalName)
+        User user = userCache.findByLogin(currentPrincipalName)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        twoFactorAuthenticationService.toggle2FA(user);
+        boolean enabled = twoFactorAuthenticationService.toggle2FA(user);
 
-        String message = user.isTwoFactorEnabled() ? "2FA is now enabled." : "2FA is now disabled.";
-        Toggle2FAResponse response = new Toggle2FAResponse(user.isTwoFactorEnabled(), message);
+        String message = enabled ? "2FA is now enabled." : "2FA is now disabled.";
+        Toggle2FAResponse response = new Toggle2FAResponse(enabled, message);
 
         return ResponseEntity.ok(response);
     }
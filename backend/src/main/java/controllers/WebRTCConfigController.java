@@ -1,66 +1,42 @@
 package controllers;
 
-import models.IceServer;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import services.TurnCredentialIssuer;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.List;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/v1/webrtc")
 public class WebRTCConfigController {
 
-    @Value("${webrtc.stun.server.url}")
-    private String stunServerUrl;
+    private final TurnCredentialIssuer turnCredentialIssuer;
 
-    @Value("${webrtc.turn.server.url}")
-    private String turnServerUrl;
-
-    @Value("${webrtc.turn.secret}")
-    private String turnSecret;
-
-    // TURN credentials validity in seconds (e.g., 10 minutes)
-    private static final long TURN_CREDENTIALS_VALIDITY = 600;
-
-    @GetMapping("/ice-servers")
-    public ResponseEntity<List<IceServer>> getIceServers(@RequestParam(name = "useTurn", required = false, defaultValue = "false") boolean useTurn) {
-        List<IceServer> iceServers = new ArrayList<>();
-
-        // Always add STUN server
-        iceServers.add(new IceServer(stunServerUrl));
-
-        // Add TURN server if requested
-        if (useTurn) {
-            try {
-                // Generate time-limited credentials for TURN
-                long timestamp = (System.currentTimeMillis() / 1000) + TURN_CREDENTIALS_VALIDITY;
-                String username = String.valueOf(timestamp);
-
-                Mac sha1Hmac = Mac.getInstance("HmacSHA1");
-                SecretKeySpec secretKey = new SecretKeySpec(turnSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA1");
-                sha1Hmac.init(secretKey);
-                byte[] hmac = sha1Hmac.doFinal(username.getBytes(StandardCharsets.UTF_8));
-                String password = Base64.getEncoder().encodeToString(hmac);
+    public WebRTCConfigController(TurnCredentialIssuer turnCredentialIssuer) {
+        this.turnCredentialIssuer = turnCredentialIssuer;
+    }
 
-                iceServers.add(new IceServer(turnServerUrl, username, password));
-            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-                // Log the exception and potentially fall back or return an error
-                System.err.println("Error generating TURN credentials: " + e.getMessage());
-                // For simplicity, we don't add the TURN server if credential generation fails
-            }
+    /**
+     * Возвращает список ICE-серверов (JSON-массив объектов {@code { urls, username?, credential? }}).
+     * Ответ сериализован заранее; клиент может кэшировать его, пока выданные учетные данные не сменятся.
+     */
+    @GetMapping(value = "/ice-servers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getIceServers(@RequestParam(name = "useTurn", required = false, defaultValue = "false") boolean useTurn) {
+        if (!useTurn) {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePrivate())
+                    .body(turnCredentialIssuer.getStunOnly());
         }
 
-        return ResponseEntity.ok(iceServers);
+        TurnCredentialIssuer.IceServersResponse response = turnCredentialIssuer.getWithTurn();
+        long maxAge = Math.max(0, response.validUntilSeconds() - System.currentTimeMillis() / 1000);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(maxAge)).cachePrivate())
+                .body(response.body());
     }
 }
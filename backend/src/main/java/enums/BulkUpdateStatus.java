@@ -0,0 +1,7 @@
+package enums;
+
+public enum BulkUpdateStatus {
+    UPDATED,
+    UNCHANGED,
+    NOT_FOUND
+}
@@ -0,0 +1,7 @@
+package enums;
+
+public enum CallStatus {
+    IDLE,
+    RINGING,
+    IN_CALL
+}
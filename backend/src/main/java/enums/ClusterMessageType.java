@@ -0,0 +1,29 @@
+package enums;
+
+public enum ClusterMessageType {
+    // Присутствие
+    USER_CONNECTED,
+    USER_DISCONNECTED,
+    IN_CALL,
+    HEARTBEAT,
+    SYNC_REQUEST,
+    // Пересылка P2P-сигнализации пользователю другого узла
+    CALL_USER,
+    CALL_REJECTED,
+    MAKE_ANSWER,
+    ICE_CANDIDATE,
+    HANG_UP,
+    TURN_RENEGOTIATION,
+    // Закрытие сеансов пользователей (блокировка)
+    DISCONNECT_USERS,
+    // Пользователи изменены в базе, кэш должен их забыть
+    USER_CACHE_EVICT,
+    // Токены пользователей отозваны
+    TOKENS_REVOKED,
+    // Узел останавливается
+    NODE_LEFT,
+    // Размещение групповых комнат
+    ROOM_OPENED,
+    ROOM_CLOSED,
+    ROOM_SYNC_REQUEST
+}
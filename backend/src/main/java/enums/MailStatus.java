@@ -0,0 +1,7 @@
+package enums;
+
+public enum MailStatus {
+    PENDING,
+    SENT,
+    FAILED
+}
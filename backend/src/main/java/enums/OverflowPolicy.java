@@ -0,0 +1,6 @@
+package enums;
+
+public enum OverflowPolicy {
+    DROP_STALE,
+    DISCONNECT
+}
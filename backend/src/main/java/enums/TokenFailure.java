@@ -0,0 +1,9 @@
+package enums;
+
+public enum TokenFailure {
+    EMPTY,
+    MALFORMED,
+    EXPIRED,
+    INVALID_SIGNATURE,
+    UNSUPPORTED
+}
@@ -0,0 +1,10 @@
+package models;
+
+import enums.UserActivate;
+import enums.UserRole;
+
+/**
+ * Пользователь в списке администратора: только отображаемые поля, без пароля и кодов 2FA.
+ */
+public record AdminUserView(Long id, String username, String login, UserRole role, UserActivate activation) {
+}
@@ -0,0 +1,6 @@
+package models;
+
+import enums.BulkUpdateStatus;
+
+public record BulkUpdateResult(Long id, BulkUpdateStatus status) {
+}
@@ -0,0 +1,11 @@
+package models;
+
+import enums.UserRole;
+
+import java.util.List;
+
+/**
+ * Запрос массового изменения пользователей. {@code role} используется только при смене роли.
+ */
+public record BulkUserRequest(List<Long> ids, UserRole role) {
+}
@@ -0,0 +1,19 @@
+package models;
+
+import enums.CallStatus;
+
+/**
+ * Состояние звонка пользователя: статус и ID собеседника (null в статусе IDLE).
+ */
+public record CallState(CallStatus status, Long peerId) {
+
+    public static final CallState IDLE = new CallState(CallStatus.IDLE, null);
+
+    public boolean isIdle() {
+        return status == CallStatus.IDLE;
+    }
+
+    public boolean isWith(Long userId) {
+        return peerId != null && peerId.equals(userId);
+    }
+}
@@ -0,0 +1,16 @@
+package models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import enums.ClusterMessageType;
+
+/**
+ * Сообщение между узлами кластера сигнализации.
+ *
+ * @param type    Тип сообщения.
+ * @param node    Узел-отправитель.
+ * @param from    ID пользователя-отправителя (если есть).
+ * @param to      ID пользователя-получателя (если есть).
+ * @param payload Данные сообщения, например кадр для клиента.
+ */
+public record ClusterMessage(ClusterMessageType type, String node, Long from, Long to, JsonNode payload) {
+}
@@ -0,0 +1,5 @@
+package models;
+
+public record HashingStats(int threads, int activeThreads, int queuedTasks, long completedTasks,
+                           long rejectedTasks, double averageMillis, double maxMillis) {
+}
@@ -0,0 +1,4 @@
+package models;
+
+public record MailQueueStats(long pending, long sent, long failed) {
+}
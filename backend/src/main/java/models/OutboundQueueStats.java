@@ -0,0 +1,5 @@
+package models;
+
+public record OutboundQueueStats(int sessions, long queuedMessages, int maxQueueDepth,
+                                 long droppedMessages, long disconnectedSessions) {
+}
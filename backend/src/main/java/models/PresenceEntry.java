@@ -0,0 +1,4 @@
+package models;
+
+public record PresenceEntry(Long id, String username, String login, String role) {
+}
@@ -0,0 +1,10 @@
+package models;
+
+/**
+ * Узел, на который переадресуется вход в групповую комнату.
+ *
+ * @param node ID узла.
+ * @param url  Внешний адрес сигнализации узла.
+ */
+public record RoomRoute(String node, String url) {
+}
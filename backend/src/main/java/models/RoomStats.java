@@ -0,0 +1,5 @@
+package models;
+
+public record RoomStats(int rooms, int participants, int endpoints, int maxRoomEndpoints, long joins,
+                        long failedJoins, double averageJoinMillis, double maxJoinMillis) {
+}
@@ -0,0 +1,62 @@
+package models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Типизированное входящее сообщение сигнализации.
+ * P2P-сообщения различаются по полю {@code type}, сообщения комнат - по полю {@code id}.
+ * Полезная нагрузка WebRTC (offer, answer, candidate) хранится как {@link JsonNode}
+ * и пересылается получателю без повторного разбора.
+ */
+public sealed interface SignalingMessage {
+
+    /**
+     * Сообщение, адресованное другому пользователю (поле {@code to}).
+     */
+    sealed interface PeerMessage extends SignalingMessage {
+        Long to();
+    }
+
+    /**
+     * Сообщение групповой комнаты Kurento.
+     */
+    sealed interface RoomMessage extends SignalingMessage {
+    }
+
+    record CallUser(Long to, JsonNode offer, JsonNode useTurn) implements PeerMessage {
+    }
+
+    record MakeAnswer(Long to, JsonNode answer, JsonNode useTurn) implements PeerMessage {
+    }
+
+    record PeerIceCandidate(Long to, JsonNode candidate) implements PeerMessage {
+    }
+
+    record HangUp(Long to) implements PeerMessage {
+    }
+
+    record TurnRenegotiation(Long to) implements PeerMessage {
+    }
+
+    record UnknownPeerMessage(String type, Long to) implements PeerMessage {
+    }
+
+    /**
+     * @param redirected Клиент пришел по roomRedirect. Только для диагностики: если узел не владеет комнатой,
+     *                   клиент переадресуется снова.
+     */
+    record JoinRoom(String room, String name, boolean redirected) implements RoomMessage {
+    }
+
+    record ReceiveVideoFrom(String sender, String sdpOffer) implements RoomMessage {
+    }
+
+    record LeaveRoom() implements RoomMessage {
+    }
+
+    record RoomIceCandidate(String name, String candidate, String sdpMid, int sdpMLineIndex) implements RoomMessage {
+    }
+
+    record UnknownRoomMessage(String id) implements RoomMessage {
+    }
+}
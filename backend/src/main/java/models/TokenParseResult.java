@@ -0,0 +1,22 @@
+package models;
+
+import enums.TokenFailure;
+import io.jsonwebtoken.Claims;
+
+/**
+ * Результат разбора JWT: утверждения проверенного токена либо причина отказа.
+ */
+public record TokenParseResult(Claims claims, TokenFailure failure) {
+
+    public static TokenParseResult valid(Claims claims) {
+        return new TokenParseResult(claims, null);
+    }
+
+    public static TokenParseResult invalid(TokenFailure failure) {
+        return new TokenParseResult(null, failure);
+    }
+
+    public boolean isValid() {
+        return claims != null;
+    }
+}
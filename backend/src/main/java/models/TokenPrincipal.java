@@ -0,0 +1,15 @@
+package models;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Данные пользователя, извлеченные из проверенного JWT.
+ */
+public record TokenPrincipal(Long userId, String login, String username, List<String> roles,
+                             Instant issuedAt, Instant expiresAt) {
+
+    public String primaryRole() {
+        return roles.isEmpty() ? null : roles.get(0);
+    }
+}
@@ -0,0 +1,10 @@
+package models;
+
+import java.time.Instant;
+
+/**
+ * Момент отзыва токенов пользователя: токены, выпущенные не позже {@code tokensValidAfter}, не принимаются.
+ * null - токены не отзывались.
+ */
+public record TokenRevocation(Instant tokensValidAfter) {
+}
@@ -0,0 +1,5 @@
+package models;
+
+public record TurnServerStatus(String url, boolean healthy, double rttMillis, int consecutiveFailures,
+                               long recentlyIssued) {
+}
@@ -3,10 +3,14 @@ package models;
 import enums.UserActivate;
 import jakarta.persistence.*;
 import enums.UserRole;
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_role_id", columnList = "role, id"),
+        @Index(name = "idx_users_activation_id", columnList = "activation, id")
+})
 public class User {
 
     @Id
@@ -44,6 +48,10 @@ public class User {
     @Column(name = "two_factor_code_expires")
     private LocalDateTime twoFactorCodeExpires;
 
+    // Токены, выпущенные не позже этого момента, отозваны
+    @Column(name = "tokens_valid_after")
+    private Instant tokensValidAfter;
+
     @Column(name = "two_factor_enabled", nullable = false)
     private Boolean twoFactorEnabled = true;
 
@@ -62,6 +70,24 @@ public class User {
     }
 
 
+    /**
+     * Отсоединенная копия пользователя, например для выдачи из кэша.
+     */
+    public User(User other) {
+        this.id = other.id;
+        this.username = other.username;
+        this.login = other.login;
+        this.password = other.password;
+        this.role = other.role;
+        this.activation = other.activation;
+        this.verificationToken = other.verificationToken;
+        this.verificationTokenExpires = other.verificationTokenExpires;
+        this.twoFactorCode = other.twoFactorCode;
+        this.twoFactorCodeExpires = other.twoFactorCodeExpires;
+        this.twoFactorEnabled = other.twoFactorEnabled;
+        this.tokensValidAfter = other.tokensValidAfter;
+    }
+
     public User(String username, String login, String password,UserRole role) {
         this.username = username;
         this.login = login;
@@ -132,6 +158,14 @@ public class User {
         this.verificationTokenExpires = verificationTokenExpires;
     }
 
+    public Instant getTokensValidAfter() {
+        return tokensValidAfter;
+    }
+
+    public void setTokensValidAfter(Instant tokensValidAfter) {
+        this.tokensValidAfter = tokensValidAfter;
+    }
+
     //  Реализация equals и hashCode по ID (защита от ошибок в коллекциях)
     @Override
     public boolean equals(Object o) {
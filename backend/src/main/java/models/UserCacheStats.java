@@ -0,0 +1,4 @@
+package models;
+
+public record UserCacheStats(long size, long hits, long misses, double hitRate, long evictions) {
+}
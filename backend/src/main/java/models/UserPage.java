@@ -0,0 +1,10 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Страница списка пользователей. {@code nextCursor} передается в {@code after} для следующей страницы;
+ * null, если страница последняя.
+ */
+public record UserPage(List<AdminUserView> items, Long nextCursor) {
+}
@@ -0,0 +1,76 @@
+package repositories;
+
+import enums.MailStatus;
+import models.OutboundMail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboundMailRepository extends JpaRepository<OutboundMail, Long> {
+
+    /**
+     * Id писем, готовых к отправке и не захваченных другим узлом.
+     */
+    @Query("""
+            select m.id from OutboundMail m
+            where m.status = :status and m.nextAttemptAt <= :now
+              and (m.claimedUntil is null or m.claimedUntil < :now)
+            order by m.nextAttemptAt""")
+    List<Long> findDueIds(@Param("status") MailStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Захватывает письма до {@code until}, если их не успел захватить другой узел.
+     *
+     * @return Число захваченных писем; сами письма выбираются по {@code token}.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            update OutboundMail m set m.claimToken = :token, m.claimedUntil = :until
+            where m.id in :ids and m.status = :status
+              and (m.claimedUntil is null or m.claimedUntil < :now)""")
+    int claim(@Param("ids") Collection<Long> ids, @Param("status") MailStatus status, @Param("now") LocalDateTime now,
+              @Param("token") String token, @Param("until") LocalDateTime until);
+
+    List<OutboundMail> findByClaimToken(String claimToken);
+
+    /**
+     * Записывает результат попытки и снимает захват, только если письмо все еще захвачено этим узлом.
+     * Текст письма стирается, если оно больше не будет отправляться ({@code keepBody = false}).
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            update OutboundMail m set m.status = :status, m.attempts = :attempts, m.nextAttemptAt = :nextAttemptAt,
+                m.lastError = :lastError, m.sentAt = :sentAt, m.claimToken = null, m.claimedUntil = null,
+                m.body = case when :keepBody = true then m.body else '' end
+            where m.id = :id and m.claimToken = :token""")
+    int complete(@Param("id") Long id, @Param("token") String token, @Param("status") MailStatus status,
+                 @Param("attempts") int attempts, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                 @Param("lastError") String lastError, @Param("sentAt") LocalDateTime sentAt,
+                 @Param("keepBody") boolean keepBody);
+
+    /**
+     * Стирает текст писем, которые больше не будут отправляться (в том числе записанных до появления стирания).
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboundMail m set m.body = '' where m.status <> :pending and m.body <> ''")
+    int clearFinishedBodies(@Param("pending") MailStatus pending);
+
+    long countByStatus(MailStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("delete from OutboundMail m where m.status = :status and m.createdAt < :before")
+    int deleteByStatusCreatedBefore(@Param("status") MailStatus status, @Param("before") LocalDateTime before);
+}
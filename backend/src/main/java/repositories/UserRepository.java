@@ -1,12 +1,93 @@
 package repositories;
 
+import enums.UserActivate;
+import enums.UserRole;
+import models.AdminUserView;
+import models.TokenRevocation;
 import models.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByLogin(String login);
     Optional<User> findByVerificationToken(String verificationToken);
-}
\ No newline at end of file
+    boolean existsByLogin(String login);
+
+    /**
+     * Страница пользователей с id больше {@code after} по возрастанию id (keyset-пагинация).
+     * Пустые фильтры не применяются; {@code loginPattern} - шаблон LIKE с экранированием через '!'.
+     */
+    @Query("""
+            select new models.AdminUserView(u.id, u.username, u.login, u.role, u.activation)
+            from User u
+            where u.id > :after
+              and (:role is null or u.role = :role)
+              and (:activation is null or u.activation = :activation)
+              and (:loginPattern is null or u.login like :loginPattern escape '!')
+            order by u.id""")
+    List<AdminUserView> findPageAfter(@Param("after") long after,
+                                      @Param("role") UserRole role,
+                                      @Param("activation") UserActivate activation,
+                                      @Param("loginPattern") String loginPattern,
+                                      Pageable pageable);
+
+    @Query("select new models.AdminUserView(u.id, u.username, u.login, u.role, u.activation) from User u where u.id in :ids")
+    List<AdminUserView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("update User u set u.activation = :activation where u.id in :ids and u.activation <> :activation")
+    int updateActivation(@Param("ids") Collection<Long> ids, @Param("activation") UserActivate activation);
+
+    /**
+     * Заменяет хэш пароля, только если он не менялся с момента проверки.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.password = :upgraded where u.id = :id and u.password = :expected")
+    int replacePassword(@Param("id") Long id, @Param("expected") String expected, @Param("upgraded") String upgraded);
+
+    /**
+     * Записывает код 2FA, не затрагивая остальные поля (в том числе пароль, который мог быть перехеширован).
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.twoFactorCode = :code, u.twoFactorCodeExpires = :expires where u.id = :id")
+    int updateTwoFactorCode(@Param("id") Long id, @Param("code") String code, @Param("expires") LocalDateTime expires);
+
+    @Modifying
+    @Transactional
+    @Query("update User u set u.twoFactorEnabled = :enabled where u.id = :id")
+    int updateTwoFactorEnabled(@Param("id") Long id, @Param("enabled") boolean enabled);
+
+    /**
+     * Отзывает токены пользователей, выпущенные не позже {@code at}.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.tokensValidAfter = :at where u.id in :ids")
+    int updateTokensValidAfter(@Param("ids") Collection<Long> ids, @Param("at") Instant at);
+
+    /**
+     * Момент отзыва токенов пользователя; пустой Optional, если пользователя нет (удален).
+     */
+    @Query("select new models.TokenRevocation(u.tokensValidAfter) from User u where u.id = :id")
+    Optional<TokenRevocation> findTokenRevocation(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("update User u set u.role = :role where u.id in :ids and u.role <> :role")
+    int updateRole(@Param("ids") Collection<Long> ids, @Param("role") UserRole role);
+}
@@ -1,46 +1,162 @@
 
 package services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.BulkUpdateStatus;
 import enums.UserActivate;
 import enums.UserRole;
-import models.User;
+import models.AdminUserView;
+import models.BulkUpdateResult;
+import models.UserPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import repositories.UserRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Service
 public class AdminService {
 
     private final UserRepository userRepository;
+    private final VerifiedTokenCache tokenCache;
+    private final UserCache userCache;
+    private final ObjectMapper objectMapper;
 
-    public AdminService(UserRepository userRepository) {
+    @Value("${app.admin.users.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${app.admin.users.export-batch-size:1000}")
+    private int exportBatchSize;
+
+    // Сколько id обрабатывается одним UPDATE при массовых изменениях
+    @Value("${app.admin.bulk.batch-size:500}")
+    private int bulkBatchSize;
+
+    public AdminService(UserRepository userRepository, VerifiedTokenCache tokenCache, UserCache userCache,
+                        ObjectMapper objectMapper) {
         this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
+        this.userCache = userCache;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Страница пользователей после {@code after} (id последнего пользователя предыдущей страницы).
+     * Фильтры со значением null не применяются.
+     */
+    public UserPage listUsers(Long after, int limit, UserRole role, UserActivate activation, String loginPrefix) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        List<AdminUserView> items = userRepository.findPageAfter(after == null ? 0 : after, role, activation,
+                toLikePattern(loginPrefix), PageRequest.of(0, size));
+        Long nextCursor = items.size() == size ? items.get(size - 1).id() : null;
+        return new UserPage(items, nextCursor);
+    }
+
+    /**
+     * Пишет всех подходящих пользователей в NDJSON (по объекту на строку), читая базу пачками,
+     * чтобы не держать весь список в памяти и не открывать долгую транзакцию.
+     */
+    public void exportUsers(UserRole role, UserActivate activation, String loginPrefix, OutputStream out)
+            throws IOException {
+        String loginPattern = toLikePattern(loginPrefix);
+        long after = 0;
+        List<AdminUserView> batch;
+        do {
+            batch = userRepository.findPageAfter(after, role, activation, loginPattern,
+                    PageRequest.of(0, exportBatchSize));
+            for (AdminUserView user : batch) {
+                out.write(objectMapper.writeValueAsBytes(user));
+                out.write('\n');
+            }
+            out.flush();
+            if (!batch.isEmpty()) {
+                after = batch.get(batch.size() - 1).id();
+            }
+        } while (batch.size() == exportBatchSize);
+    }
+
+    public List<BulkUpdateResult> blockUsers(Collection<Long> userIds) {
+        return bulkUpdate(userIds, user -> user.activation() != UserActivate.Disable,
+                batch -> userRepository.updateActivation(batch, UserActivate.Disable), true);
+    }
+
+    public List<BulkUpdateResult> unblockUsers(Collection<Long> userIds) {
+        return bulkUpdate(userIds, user -> user.activation() != UserActivate.Enable,
+                batch -> userRepository.updateActivation(batch, UserActivate.Enable), false);
+    }
+
+    public List<BulkUpdateResult> changeUsersRole(Collection<Long> userIds, UserRole newRole) {
+        return bulkUpdate(userIds, user -> user.role() != newRole,
+                batch -> userRepository.updateRole(batch, newRole), true);
+    }
+
+    /**
+     * Применяет изменение пачками: одна выборка текущих значений и один UPDATE на пачку.
+     * Пользователи, у которых значение уже целевое, не обновляются.
+     *
+     * @param needsUpdate  Нужно ли менять пользователя.
+     * @param update       UPDATE для пачки id.
+     * @param revokeTokens Отозвать токены измененных пользователей.
+     * @return Результат для каждого id в порядке запроса.
+     */
+    private List<BulkUpdateResult> bulkUpdate(Collection<Long> userIds, Predicate<AdminUserView> needsUpdate,
+                                              Consumer<List<Long>> update, boolean revokeTokens) {
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, BulkUpdateStatus> statuses = new HashMap<>();
+        List<Long> updated = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += bulkBatchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + bulkBatchSize, ids.size()));
+            List<Long> changing = new ArrayList<>();
+            for (AdminUserView user : userRepository.findViewsByIdIn(batch)) {
+                if (needsUpdate.test(user)) {
+                    changing.add(user.id());
+                } else {
+                    statuses.put(user.id(), BulkUpdateStatus.UNCHANGED);
+                }
+            }
+            if (!changing.isEmpty()) {
+                update.accept(changing);
+                userCache.evict(changing);
+                changing.forEach(id -> statuses.put(id, BulkUpdateStatus.UPDATED));
+                updated.addAll(changing);
+            }
+        }
+        if (revokeTokens) {
+            tokenCache.invalidateUsers(new HashSet<>(updated));
+        }
+        return ids.stream()
+                .map(id -> new BulkUpdateResult(id, statuses.getOrDefault(id, BulkUpdateStatus.NOT_FOUND)))
+                .toList();
     }
 
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    // Префикс логина -> шаблон LIKE; спецсимволы экранируются через '!'
+    private static String toLikePattern(String loginPrefix) {
+        if (loginPrefix == null || loginPrefix.isBlank()) {
+            return null;
+        }
+        return loginPrefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
     }
 
-    public Optional<User> blockUser(Long userId) {
-        return userRepository.findById(userId).map(user -> {
-            user.setActivation(UserActivate.Disable);
-            return userRepository.save(user);
-        });
+    public BulkUpdateStatus blockUser(Long userId) {
+        return blockUsers(List.of(userId)).get(0).status();
     }
 
-    public Optional<User> unblockUser(Long userId) {
-        return userRepository.findById(userId).map(user -> {
-            user.setActivation(UserActivate.Enable);
-            return userRepository.save(user);
-        });
+    public BulkUpdateStatus unblockUser(Long userId) {
+        return unblockUsers(List.of(userId)).get(0).status();
     }
 
-    public Optional<User> changeUserRole(Long userId, UserRole newRole) {
-        return userRepository.findById(userId).map(user -> {
-            user.setRole(newRole);
-            return userRepository.save(user);
-        });
+    public BulkUpdateStatus changeUserRole(Long userId, UserRole newRole) {
+        return changeUsersRole(List.of(userId), newRole).get(0).status();
     }
 }
@@ -0,0 +1,11 @@
+package services;
+
+/**
+ * Очередь хеширования паролей заполнена; запрос следует повторить позже.
+ */
+public class HashingOverloadedException extends RuntimeException {
+
+    public HashingOverloadedException() {
+        super("Password hashing is overloaded, please retry later");
+    }
+}
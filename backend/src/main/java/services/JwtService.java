@@ -1,10 +1,19 @@
 package services;
 
+import enums.TokenFailure;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
 import jakarta.annotation.PostConstruct;
+import models.TokenParseResult;
 import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -17,14 +26,21 @@ import java.util.Map;
 @Service
 public class JwtService {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtService.class);
+
     @Value("${jwt.secret}")
     private String secret;
 
     private Key key;
+    private SignatureAlgorithm algorithm;
+    // JwtParser неизменяем и потокобезопасен, поэтому строится один раз
+    private JwtParser parser;
 
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.algorithm = SignatureAlgorithm.forSigningKey(key);
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     // Токен живет 24 часа
@@ -48,32 +64,69 @@ public class JwtService {
                 .setSubject(user.getLogin())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-                .signWith(key)
+                .signWith(key, algorithm)
                 .compact();
     }
 
+    /**
+     * Проверяет подпись и срок действия токена.
+     * Заведомо некорректные токены отсекаются без разбора и без исключений.
+     */
+    public TokenParseResult parse(String token) {
+        if (token == null || token.isBlank()) {
+            return TokenParseResult.invalid(TokenFailure.EMPTY);
+        }
+        TokenFailure structural = checkStructure(token);
+        if (structural != null) {
+            return TokenParseResult.invalid(structural);
+        }
+        try {
+            return TokenParseResult.valid(parser.parseClaimsJws(token).getBody());
+        } catch (ExpiredJwtException e) {
+            return failure(TokenFailure.EXPIRED, e);
+        } catch (SecurityException e) {
+            return failure(TokenFailure.INVALID_SIGNATURE, e);
+        } catch (UnsupportedJwtException e) {
+            return failure(TokenFailure.UNSUPPORTED, e);
+        } catch (JwtException | IllegalArgumentException e) {
+            return failure(TokenFailure.MALFORMED, e);
+        }
+    }
+
+    public long getExpirationMillis() {
+        return EXPIRATION_TIME;
+    }
+
     /**
      * Извлекает логин из токена
      */
     public String extractLogin(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        TokenParseResult result = parse(token);
+        return result.isValid() ? result.claims().getSubject() : null;
     }
 
     /**
      * Проверяет, валиден ли токен
      */
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+        return parse(token).isValid();
+    }
+
+    // Подписанный JWS состоит ровно из трех непустых частей, разделенных точками
+    private static TokenFailure checkStructure(String token) {
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (first <= 0 || second < 0 || second == first + 1 || token.indexOf('.', second + 1) >= 0) {
+            return TokenFailure.MALFORMED;
+        }
+        if (second == token.length() - 1) {
+            return TokenFailure.UNSUPPORTED;
         }
+        return null;
+    }
+
+    private static TokenParseResult failure(TokenFailure failure, Exception e) {
+        logger.debug("Rejected JWT ({}): {}", failure, e.getMessage());
+        return TokenParseResult.invalid(failure);
     }
-}
\ No newline at end of file
+}
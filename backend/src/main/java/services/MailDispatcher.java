@@ -0,0 +1,218 @@
+package services;
+
+import enums.MailStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import models.MailQueueStats;
+import models.OutboundMail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import repositories.OutboundMailRepository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фоновая отправка писем из очереди {@link OutboundMail}.
+ * Готовые к отправке письма отправляются пакетами через одно SMTP-соединение на пакет.
+ * Неудачные попытки повторяются с экспоненциальной задержкой, после исчерпания попыток
+ * письмо помечается как FAILED.
+ * Диспетчер работает на каждом узле кластера, поэтому пакет сначала захватывается условным UPDATE
+ * с аренды на {@code app.mail.claim-lease-ms}: одно письмо отправляет только захвативший его узел.
+ * Если узел остановился, не дописав результат, письмо после окончания аренды отправит другой узел.
+ */
+@Service
+public class MailDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDispatcher.class);
+
+    private final OutboundMailRepository mailRepository;
+    private final JavaMailSender mailSender;
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mail-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${spring.mail.username}")
+    private String fromEmail;
+
+    @Value("${app.mail.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${app.mail.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.mail.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.mail.retry-base-ms:5000}")
+    private long retryBaseMs;
+
+    @Value("${app.mail.retry-max-ms:600000}")
+    private long retryMaxMs;
+
+    @Value("${app.mail.retention-days:7}")
+    private int retentionDays;
+
+    // Должно покрывать отправку целого пакета с таймаутами SMTP
+    @Value("${app.mail.claim-lease-ms:120000}")
+    private long claimLeaseMs;
+
+    public MailDispatcher(OutboundMailRepository mailRepository, JavaMailSender mailSender) {
+        this.mailRepository = mailRepository;
+        this.mailSender = mailSender;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::dispatch, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::purge, 1, 1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Запускает отправку без ожидания следующего опроса (после постановки письма в очередь).
+     */
+    public void wakeUp() {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                wakeUpScheduled.set(false);
+                dispatch();
+            });
+        }
+    }
+
+    public MailQueueStats getStats() {
+        return new MailQueueStats(mailRepository.countByStatus(MailStatus.PENDING),
+                mailRepository.countByStatus(MailStatus.SENT),
+                mailRepository.countByStatus(MailStatus.FAILED));
+    }
+
+    // Пакетный доступ - для тестов, которые вызывают отправку без планировщика
+    void dispatch() {
+        try {
+            List<Long> due;
+            do {
+                LocalDateTime now = LocalDateTime.now();
+                due = mailRepository.findDueIds(MailStatus.PENDING, now, PageRequest.of(0, batchSize));
+                if (due.isEmpty()) {
+                    break;
+                }
+                String token = UUID.randomUUID().toString();
+                LocalDateTime until = now.plus(claimLeaseMs, ChronoUnit.MILLIS);
+                if (mailRepository.claim(due, MailStatus.PENDING, now, token, until) > 0) {
+                    List<OutboundMail> batch = mailRepository.findByClaimToken(token);
+                    sendBatch(batch);
+                    batch.forEach(mail -> complete(mail, token));
+                }
+                // Письма с ошибкой переносятся в будущее, а захваченные другими узлами пропускаются,
+                // поэтому цикл завершается
+            } while (due.size() == batchSize);
+        } catch (RuntimeException e) {
+            logger.error("Error dispatching outbound mail", e);
+        }
+    }
+
+    private void sendBatch(List<OutboundMail> batch) {
+        SimpleMailMessage[] messages = batch.stream().map(this::toMessage).toArray(SimpleMailMessage[]::new);
+        Map<Object, Exception> failures = Map.of();
+        MailException batchFailure = null;
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            if (failures.isEmpty()) {
+                batchFailure = e;
+            }
+        } catch (MailException e) {
+            batchFailure = e;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMail mail = batch.get(i);
+            Exception error = batchFailure != null ? batchFailure : failures.get(messages[i]);
+            if (error == null) {
+                mail.setStatus(MailStatus.SENT);
+                mail.setSentAt(now);
+                mail.setAttempts(mail.getAttempts() + 1);
+                mail.setLastError(null);
+                logger.info("Mail '{}' sent to {}", mail.getSubject(), mail.getRecipient());
+            } else {
+                recordFailure(mail, error, now);
+            }
+        }
+    }
+
+    private void complete(OutboundMail mail, String token) {
+        // Текст (в том числе коды 2FA) хранится только до отправки; на срок хранения остаются метаданные
+        int updated = mailRepository.complete(mail.getId(), token, mail.getStatus(), mail.getAttempts(),
+                mail.getNextAttemptAt(), mail.getLastError(), mail.getSentAt(), mail.getStatus() == MailStatus.PENDING);
+        if (updated == 0) {
+            logger.warn("Claim on mail {} expired before its result was saved", mail.getId());
+        }
+    }
+
+    private void recordFailure(OutboundMail mail, Exception error, LocalDateTime now) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String message = String.valueOf(error.getMessage());
+        mail.setLastError(message.length() > 1000 ? message.substring(0, 1000) : message);
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailStatus.FAILED);
+            logger.error("Giving up on mail '{}' to {} after {} attempts: {}",
+                    mail.getSubject(), mail.getRecipient(), attempts, message);
+            return;
+        }
+        long delayMs = Math.min(retryMaxMs, retryBaseMs << Math.min(attempts - 1, 20));
+        mail.setNextAttemptAt(now.plus(delayMs, ChronoUnit.MILLIS));
+        logger.warn("Failed to send mail '{}' to {} (attempt {}), retrying in {} ms: {}",
+                mail.getSubject(), mail.getRecipient(), attempts, delayMs, message);
+    }
+
+    private void purge() {
+        try {
+            int cleared = mailRepository.clearFinishedBodies(MailStatus.PENDING);
+            if (cleared > 0) {
+                logger.info("Cleared body of {} finished outbound mail records", cleared);
+            }
+            LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+            int removed = mailRepository.deleteByStatusCreatedBefore(MailStatus.SENT, before)
+                    + mailRepository.deleteByStatusCreatedBefore(MailStatus.FAILED, before);
+            if (removed > 0) {
+                logger.info("Purged {} old outbound mail records", removed);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error purging outbound mail", e);
+        }
+    }
+
+    private SimpleMailMessage toMessage(OutboundMail mail) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(mail.getRecipient());
+        message.setSubject(mail.getSubject());
+        message.setText(mail.getBody());
+        return message;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,138 @@
+package services;
+
+import jakarta.annotation.PreDestroy;
+import models.HashingStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Хеширование и проверка паролей в отдельном пуле потоков.
+ * Пул ограничен числом ядер, а очередь - заданной длиной: при переполнении вызов сразу
+ * завершается {@link HashingOverloadedException}, и вход под нагрузкой не забирает
+ * процессор у остальных запросов.
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final PasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejectedTasks = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  UserCache userCache,
+                                  @Value("${app.security.hashing.threads:0}") int threads,
+                                  @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Хеширует пароль.
+     *
+     * @throws HashingOverloadedException если очередь хеширования заполнена.
+     */
+    public String encode(String rawPassword) {
+        return await(submit(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    /**
+     * Проверяет пароль.
+     *
+     * @throws HashingOverloadedException если очередь хеширования заполнена.
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return await(submit(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * Перехеширует пароль пользователя в фоне, если хеш создан с устаревшими параметрами
+     * (например, с меньшей стоимостью BCrypt). Вызывается после успешной проверки пароля.
+     */
+    public void upgradeIfNeeded(Long userId, String encodedPassword, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(encodedPassword)) {
+            return;
+        }
+        try {
+            submit(() -> passwordEncoder.encode(rawPassword))
+                    .thenAccept(upgraded -> {
+                        if (userCache.replacePassword(userId, encodedPassword, upgraded)) {
+                            logger.info("Password hash of user {} upgraded", userId);
+                        }
+                    })
+                    .exceptionally(e -> {
+                        logger.warn("Could not upgrade password hash of user {}: {}", userId, e.getMessage());
+                        return null;
+                    });
+        } catch (HashingOverloadedException e) {
+            // Перехеширование повторится при следующем входе
+            logger.debug("Skipping password hash upgrade of user {}: hashing is overloaded", userId);
+        }
+    }
+
+    public HashingStats getStats() {
+        long completed = executor.getCompletedTaskCount();
+        double average = completed == 0 ? 0 : totalNanos.get() / (double) completed / 1_000_000;
+        return new HashingStats(executor.getCorePoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                completed, rejectedTasks.get(), average, maxNanos.get() / 1_000_000.0);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    return task.get();
+                } finally {
+                    long elapsed = System.nanoTime() - startedAt;
+                    totalNanos.addAndGet(elapsed);
+                    maxNanos.accumulateAndGet(elapsed, Math::max);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedTasks.incrementAndGet();
+            throw new HashingOverloadedException();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
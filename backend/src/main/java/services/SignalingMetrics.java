@@ -0,0 +1,79 @@
+package services;
+
+import enums.CallStatus;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import services.signaling.CallStateRegistry;
+import services.signaling.OutboundQueueRegistry;
+import services.webrtc.KurentoClientPool;
+import services.webrtc.MediaServer;
+import services.webrtc.RoomManager;
+
+/**
+ * Метрики состояния сигнализации, комнат и медиасерверов.
+ * Значения снимаются с тех же счетчиков, что отдаются в /api/admin, в момент опроса реестра.
+ * Задержки пересылки, вызовов Kurento, выдача TURN и ошибки JWT пишутся в местах возникновения.
+ */
+@Component
+public class SignalingMetrics {
+
+    public SignalingMetrics(MeterRegistry meterRegistry, OutboundQueueRegistry outboundQueues,
+                            CallStateRegistry callStates, RoomManager roomManager, KurentoClientPool kurentoPool) {
+        Gauge.builder("signaling.sessions", outboundQueues, queues -> queues.getStats().sessions())
+                .description("Open signaling WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("signaling.outbound.queued", outboundQueues, queues -> queues.getStats().queuedMessages())
+                .description("Messages waiting in all outbound session queues")
+                .register(meterRegistry);
+        Gauge.builder("signaling.outbound.max.depth", outboundQueues, queues -> queues.getStats().maxQueueDepth())
+                .description("Deepest outbound session queue")
+                .register(meterRegistry);
+        FunctionCounter.builder("signaling.outbound.dropped", outboundQueues, queues -> queues.getStats().droppedMessages())
+                .description("Queued messages dropped on overflow")
+                .register(meterRegistry);
+        FunctionCounter.builder("signaling.outbound.disconnected", outboundQueues,
+                        queues -> queues.getStats().disconnectedSessions())
+                .description("Sessions closed for overflow or a stalled send")
+                .register(meterRegistry);
+
+        // Звонок учитывается у обоих участников
+        for (CallStatus status : new CallStatus[]{CallStatus.RINGING, CallStatus.IN_CALL}) {
+            Gauge.builder("signaling.calls", callStates, states -> states.count(status) / 2.0)
+                    .description("Peer-to-peer calls by state")
+                    .tag("status", status.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("signaling.rooms", roomManager, rooms -> rooms.getStats().rooms())
+                .description("Group rooms with a media pipeline")
+                .register(meterRegistry);
+        Gauge.builder("signaling.rooms.participants", roomManager, rooms -> rooms.getStats().participants())
+                .description("Participants in all group rooms")
+                .register(meterRegistry);
+        Gauge.builder("signaling.rooms.endpoints", roomManager, rooms -> rooms.getStats().endpoints())
+                .description("WebRTC endpoints in all group rooms")
+                .register(meterRegistry);
+        Gauge.builder("signaling.rooms.endpoints.max", roomManager, rooms -> rooms.getStats().maxRoomEndpoints())
+                .description("WebRTC endpoints in the largest group room")
+                .register(meterRegistry);
+        FunctionCounter.builder("signaling.rooms.joins", roomManager, rooms -> rooms.getStats().joins())
+                .description("Completed room joins")
+                .register(meterRegistry);
+        FunctionCounter.builder("signaling.rooms.joins.failed", roomManager, rooms -> rooms.getStats().failedJoins())
+                .description("Room joins that failed")
+                .register(meterRegistry);
+
+        for (MediaServer server : kurentoPool.getServers()) {
+            Gauge.builder("kurento.pipelines", server, MediaServer::getPipelines)
+                    .description("Media pipelines on the media server")
+                    .tag("server", server.getUri())
+                    .register(meterRegistry);
+            Gauge.builder("kurento.endpoints", server, MediaServer::getEndpoints)
+                    .description("WebRTC endpoints on the media server")
+                    .tag("server", server.getUri())
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import models.IceServer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import services.turn.TurnServer;
+import services.turn.TurnServerPool;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Выдача списка ICE-серверов с временными учетными данными TURN (схема TURN REST API:
+ * username - время истечения, credential - HMAC-SHA1 от username на общем секрете coturn).
+ * Учетные данные вычисляются один раз на временной интервал, JSON - один раз на интервал
+ * и набор выбранных {@link TurnServerPool} серверов; ответ только со STUN вычисляется при старте.
+ */
+@Service
+public class TurnCredentialIssuer {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+
+    /**
+     * Готовый ответ и время, до которого его можно отдавать (и кэшировать клиенту).
+     */
+    public record IceServersResponse(byte[] body, long validUntilSeconds) {
+    }
+
+    // Учетные данные интервала и уже сериализованные ответы для разных наборов TURN-серверов
+    private record Bucket(long bucketEnd, String username, String credential,
+                          ConcurrentMap<List<String>, IceServersResponse> responses) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final TurnServerPool turnServerPool;
+    private final Counter issued;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @Value("${webrtc.stun.server.url}")
+    private String stunServerUrl;
+
+    @Value("${webrtc.turn.secret}")
+    private String turnSecret;
+
+    // Срок действия учетных данных TURN в секундах
+    @Value("${webrtc.turn.credential-ttl-seconds:600}")
+    private long credentialTtlSeconds;
+
+    // Все клиенты в пределах интервала получают одинаковые учетные данные
+    @Value("${webrtc.turn.credential-bucket-seconds:60}")
+    private long bucketSeconds;
+
+    private byte[] stunOnlyBody;
+    private Mac mac;
+    private volatile Bucket current;
+
+    public TurnCredentialIssuer(ObjectMapper objectMapper, TurnServerPool turnServerPool, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.turnServerPool = turnServerPool;
+        this.issued = Counter.builder("turn.credentials.issued")
+                .description("ICE server lists with TURN credentials handed out to clients")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() throws GeneralSecurityException, JsonProcessingException {
+        stunOnlyBody = objectMapper.writeValueAsBytes(List.of(new IceServer(stunServerUrl)));
+        mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(turnSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+    }
+
+    /**
+     * JSON-массив только со STUN-сервером. Не меняется во время работы.
+     */
+    public byte[] getStunOnly() {
+        return stunOnlyBody;
+    }
+
+    /**
+     * JSON-массив со STUN-сервером и лучшими TURN-серверами пула для текущего интервала.
+     */
+    public IceServersResponse getWithTurn() {
+        Bucket bucket = currentBucket();
+        List<String> urls = turnServerPool.select().stream().map(TurnServer::getUrl).toList();
+        issued.increment();
+        return bucket.responses().computeIfAbsent(urls, selected -> serialize(bucket, selected));
+    }
+
+    private Bucket currentBucket() {
+        long bucketEnd = (System.currentTimeMillis() / 1000 / bucketSeconds + 1) * bucketSeconds;
+        Bucket bucket = current;
+        if (bucket != null && bucket.bucketEnd() == bucketEnd) {
+            return bucket;
+        }
+        refreshLock.lock();
+        try {
+            bucket = current;
+            if (bucket == null || bucket.bucketEnd() != bucketEnd) {
+                bucket = issue(bucketEnd);
+                current = bucket;
+            }
+            return bucket;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // Учетные данные действуют не меньше credentialTtlSeconds после конца интервала
+    private Bucket issue(long bucketEnd) {
+        String username = String.valueOf(bucketEnd + credentialTtlSeconds);
+        String credential = Base64.getEncoder().encodeToString(mac.doFinal(username.getBytes(StandardCharsets.UTF_8)));
+        return new Bucket(bucketEnd, username, credential, new ConcurrentHashMap<>());
+    }
+
+    private IceServersResponse serialize(Bucket bucket, List<String> turnUrls) {
+        List<IceServer> servers = new ArrayList<>(turnUrls.size() + 1);
+        servers.add(new IceServer(stunServerUrl));
+        for (String url : turnUrls) {
+            servers.add(new IceServer(url, bucket.username(), bucket.credential()));
+        }
+        try {
+            return new IceServersResponse(objectMapper.writeValueAsBytes(servers), bucket.bucketEnd());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize ICE servers", e);
+        }
+    }
+}
@@ -2,25 +2,26 @@ package services;
 
 import models.User;
 import org.springframework.stereotype.Service;
-import repositories.UserRepository;
 
 import java.time.LocalDateTime;
 import java.util.Random;
 
+/**
+ * Коды 2FA. Изменения пишутся точечными UPDATE, а не сохранением всего пользователя,
+ * чтобы не затереть хэш пароля, перехешированный в фоне при том же входе.
+ */
 @Service
 public class TwoFactorAuthenticationService {
 
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
-    public TwoFactorAuthenticationService(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public TwoFactorAuthenticationService(UserCache userCache) {
+        this.userCache = userCache;
     }
 
     public String generateTwoFactorCode(User user) {
         String code = String.format("%06d", new Random().nextInt(999999));
-        user.setTwoFactorCode(code);
-        user.setTwoFactorCodeExpires(LocalDateTime.now().plusMinutes(15));
-        userRepository.save(user);
+        userCache.updateTwoFactorCode(user.getId(), code, LocalDateTime.now().plusMinutes(15));
         return code;
     }
 
@@ -30,13 +31,15 @@ public class TwoFactorAuthenticationService {
     }
 
     public void clearTwoFactorCode(User user) {
-        user.setTwoFactorCode(null);
-        user.setTwoFactorCodeExpires(null);
-        userRepository.save(user);
+        userCache.updateTwoFactorCode(user.getId(), null, null);
     }
 
-    public void toggle2FA(User user) {
-        user.setTwoFactorEnabled(!user.isTwoFactorEnabled());
-        userRepository.save(user);
+    /**
+     * @return Новое состояние 2FA.
+     */
+    public boolean toggle2FA(User user) {
+        boolean enabled = !Boolean.TRUE.equals(user.isTwoFactorEnabled());
+        userCache.updateTwoFactorEnabled(user.getId(), enabled);
+        return enabled;
     }
 }
@@ -0,0 +1,185 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import enums.ClusterMessageType;
+import jakarta.annotation.PostConstruct;
+import models.ClusterMessage;
+import models.User;
+import models.UserCacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import repositories.UserRepository;
+import services.cluster.ClusterBus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш пользователей по id и логину с ограничением размера и времени жизни.
+ * Все изменения пользователей должны сохраняться через {@link #save(User)} или сопровождаться
+ * {@link #evict(Collection)}, иначе кэш вернет устаревшие данные до истечения TTL.
+ * Вызывающие получают собственные копии: изменение копии не видно другим потокам и не попадает в базу.
+ * Изменение на одном узле кластера удаляет пользователя из кэшей остальных узлов.
+ */
+@Service
+public class UserCache {
+
+    private final UserRepository userRepository;
+    private final ClusterBus clusterBus;
+    private final Cache<Long, User> byId;
+    // Логин -> id; соответствие проверяется по самому пользователю, поэтому отдельно не инвалидируется
+    private final Cache<String, Long> idByLogin;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UserCache(UserRepository userRepository,
+                     ClusterBus clusterBus,
+                     @Value("${app.cache.users.max-size:10000}") long maxSize,
+                     @Value("${app.cache.users.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.clusterBus = clusterBus;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.idByLogin = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribeCluster() {
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+
+    public Optional<User> findById(Long userId) {
+        User cached = byId.getIfPresent(userId);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(new User(cached));
+        }
+        misses.increment();
+        Optional<User> loaded = userRepository.findById(userId);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    /**
+     * Отсутствующие логины не кэшируются: проверка при регистрации всегда идет в базу.
+     */
+    public Optional<User> findByLogin(String login) {
+        Long userId = idByLogin.getIfPresent(login);
+        User cached = userId != null ? byId.getIfPresent(userId) : null;
+        if (cached != null && login.equals(cached.getLogin())) {
+            hits.increment();
+            return Optional.of(new User(cached));
+        }
+        misses.increment();
+        Optional<User> loaded = userRepository.findByLogin(login);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    /**
+     * Проверка существования логина без загрузки пользователя, если его нет в кэше.
+     */
+    public boolean existsByLogin(String login) {
+        Long userId = idByLogin.getIfPresent(login);
+        User cached = userId != null ? byId.getIfPresent(userId) : null;
+        if (cached != null && login.equals(cached.getLogin())) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return userRepository.existsByLogin(login);
+    }
+
+    /**
+     * Сохраняет пользователя и кладет сохраненное состояние в кэш.
+     * Сохраняется весь пользователь, поэтому передавать нужно только что загруженного из репозитория
+     * или нового, а не полученного из кэша.
+     */
+    public User save(User user) {
+        User saved = userRepository.save(user);
+        put(saved);
+        publishEvict(List.of(saved.getId()));
+        return saved;
+    }
+
+    /**
+     * Заменяет хэш пароля одним UPDATE, если он не менялся, без загрузки пользователя.
+     *
+     * @return true, если пароль заменен.
+     */
+    public boolean replacePassword(Long userId, String expected, String upgraded) {
+        boolean replaced = userRepository.replacePassword(userId, expected, upgraded) > 0;
+        if (replaced) {
+            evict(List.of(userId));
+        }
+        return replaced;
+    }
+
+    /**
+     * Записывает или сбрасывает (null) код 2FA одним UPDATE.
+     */
+    public void updateTwoFactorCode(Long userId, String code, LocalDateTime expires) {
+        userRepository.updateTwoFactorCode(userId, code, expires);
+        evict(List.of(userId));
+    }
+
+    public void updateTwoFactorEnabled(Long userId, boolean enabled) {
+        userRepository.updateTwoFactorEnabled(userId, enabled);
+        evict(List.of(userId));
+    }
+
+    /**
+     * Удаляет пользователей из кэша после изменений в обход {@link #save(User)}, например массовым UPDATE.
+     */
+    public void evict(Collection<Long> userIds) {
+        byId.invalidateAll(userIds);
+        publishEvict(userIds);
+    }
+
+    public UserCacheStats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return new UserCacheStats(byId.estimatedSize(), hitCount, missCount,
+                total == 0 ? 0 : (double) hitCount / total, byId.stats().evictionCount());
+    }
+
+    // В кэш кладется копия, чтобы последующие изменения переданного объекта его не затрагивали
+    private void put(User user) {
+        byId.put(user.getId(), new User(user));
+        idByLogin.put(user.getLogin(), user.getId());
+    }
+
+    private void publishEvict(Collection<Long> userIds) {
+        ArrayNode ids = JsonNodeFactory.instance.arrayNode();
+        userIds.forEach(ids::add);
+        clusterBus.publish(new ClusterMessage(ClusterMessageType.USER_CACHE_EVICT, clusterBus.getNodeId(),
+                null, null, ids));
+    }
+
+    private void onClusterMessage(ClusterMessage message) {
+        if (message.type() != ClusterMessageType.USER_CACHE_EVICT || message.payload() == null) {
+            return;
+        }
+        List<Long> userIds = new ArrayList<>();
+        for (JsonNode id : message.payload()) {
+            userIds.add(id.asLong());
+        }
+        byId.invalidateAll(userIds);
+    }
+}
@@ -3,7 +3,6 @@ package services;
 import models.User;
 import repositories.UserRepository;
 import enums.UserRole;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -13,13 +12,13 @@ import java.util.UUID;
 public class UserRegistration {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashing;
     private final EmailService emailService;
 
     // Внедряем зависимости через конструктор
-    public UserRegistration(UserRepository userRepository, PasswordEncoder passwordEncoder, EmailService emailService) {
+    public UserRegistration(UserRepository userRepository, PasswordHashingService passwordHashing, EmailService emailService) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashing = passwordHashing;
         this.emailService = emailService;
     }
 
@@ -27,7 +26,7 @@ public class UserRegistration {
      * Генерирует хеш из сырого пароля.
      */
     public String generateHashFromPassword(String rawPassword) {
-        return passwordEncoder.encode(rawPassword);
+        return passwordHashing.encode(rawPassword);
     }
 
     /**
@@ -62,6 +61,6 @@ public class UserRegistration {
      * Метод для проверки пароля при входе (логине)
      */
     public boolean verifyPassword(String rawPassword, String encodedPassword) {
-        return passwordEncoder.matches(rawPassword, encodedPassword);
+        return passwordHashing.matches(rawPassword, encodedPassword);
     }
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import enums.ClusterMessageType;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import models.ClusterMessage;
+import models.TokenParseResult;
+import models.TokenPrincipal;
+import models.TokenRevocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import repositories.UserRepository;
+import services.cluster.ClusterBus;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш проверенных JWT.
+ * Токен проверяется один раз, после чего его данные берутся из кэша по хэшу токена
+ * до истечения срока действия. Токены пользователя, выпущенные до вызова
+ * {@link #invalidateUser(Long)}, больше не принимаются.
+ * Момент отзыва хранится в базе (users.tokens_valid_after) и проверяется при первой проверке токена
+ * на узле, а остальным узлам кластера рассылается сразу, чтобы они забыли уже проверенные токены.
+ * Токены удаленного пользователя считаются отозванными.
+ */
+@Service
+public class VerifiedTokenCache {
+
+    private final JwtService jwtService;
+    private final UserRepository userRepository;
+    private final ClusterBus clusterBus;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenPrincipal> verified = new ConcurrentHashMap<>();
+    private final Map<Long, Instant> revokedBefore = new ConcurrentHashMap<>();
+
+    @Value("${app.security.token-cache.max-size:10000}")
+    private int maxSize;
+
+    public VerifiedTokenCache(JwtService jwtService, UserRepository userRepository, ClusterBus clusterBus,
+                              MeterRegistry meterRegistry) {
+        this.jwtService = jwtService;
+        this.userRepository = userRepository;
+        this.clusterBus = clusterBus;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void subscribeCluster() {
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+
+    /**
+     * Проверяет токен и возвращает данные пользователя из его утверждений.
+     *
+     * @param token JWT.
+     * @return Данные пользователя или пустой Optional, если токен недействителен или отозван.
+     */
+    public Optional<TokenPrincipal> verify(String token) {
+        String key = hash(token);
+        Instant now = Instant.now();
+
+        TokenPrincipal principal = verified.get(key);
+        if (principal != null && !principal.expiresAt().isAfter(now)) {
+            verified.remove(key);
+            principal = null;
+        }
+        if (principal == null) {
+            TokenParseResult result = jwtService.parse(token);
+            if (!result.isValid()) {
+                recordFailure(result.failure().name());
+                return Optional.empty();
+            }
+            principal = toPrincipal(result.claims());
+            if (principal == null) {
+                recordFailure("MISSING_CLAIMS");
+                return Optional.empty();
+            }
+            // Отзыв мог произойти до перезапуска или на другом узле; уже известный отзыв в базе не проверяется
+            if (!isRevoked(principal)) {
+                loadRevocation(principal.userId(), now);
+            }
+            if (verified.size() >= maxSize) {
+                evict(now);
+            }
+            verified.put(key, principal);
+        }
+
+        if (isRevoked(principal)) {
+            verified.remove(key);
+            recordFailure("REVOKED");
+            return Optional.empty();
+        }
+        return Optional.of(principal);
+    }
+
+    /**
+     * Отзывает все ранее выпущенные токены пользователя (блокировка, смена роли).
+     */
+    public void invalidateUser(Long userId) {
+        invalidateUsers(List.of(userId));
+    }
+
+    /**
+     * То же для нескольких пользователей за один проход по кэшу.
+     */
+    public void invalidateUsers(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        userRepository.updateTokensValidAfter(userIds, now);
+        revoke(userIds, now);
+
+        ObjectNode payload = JsonNodeFactory.instance.objectNode();
+        payload.put("at", now.toEpochMilli());
+        userIds.forEach(payload.putArray("ids")::add);
+        clusterBus.publish(new ClusterMessage(ClusterMessageType.TOKENS_REVOKED, clusterBus.getNodeId(),
+                null, null, payload));
+    }
+
+    private void loadRevocation(Long userId, Instant now) {
+        Optional<TokenRevocation> revocation = userRepository.findTokenRevocation(userId);
+        if (revocation.isEmpty()) {
+            // Пользователь удален: отсекаются все его токены, выпущенные до этого момента. Отметка
+            // запоминается, поэтому повторные запросы с теми же токенами не доходят до базы
+            revoke(List.of(userId), now);
+            return;
+        }
+        Instant validAfter = revocation.get().tokensValidAfter();
+        if (validAfter != null) {
+            revokedBefore.merge(userId, validAfter, (a, b) -> a.isAfter(b) ? a : b);
+        }
+    }
+
+    private void revoke(Collection<Long> userIds, Instant at) {
+        Set<Long> ids = Set.copyOf(userIds);
+        ids.forEach(userId -> revokedBefore.merge(userId, at, (a, b) -> a.isAfter(b) ? a : b));
+        verified.values().removeIf(principal -> ids.contains(principal.userId()));
+
+        // Отметки старше срока жизни токена больше ничего не отсекают
+        Instant horizon = at.minusMillis(jwtService.getExpirationMillis());
+        revokedBefore.values().removeIf(revokedAt -> revokedAt.isBefore(horizon));
+    }
+
+    private void onClusterMessage(ClusterMessage message) {
+        if (message.type() != ClusterMessageType.TOKENS_REVOKED || message.payload() == null) {
+            return;
+        }
+        List<Long> userIds = new ArrayList<>();
+        for (JsonNode id : message.payload().path("ids")) {
+            userIds.add(id.asLong());
+        }
+        revoke(userIds, Instant.ofEpochMilli(message.payload().path("at").asLong()));
+    }
+
+    // Причина - значение TokenFailure, MISSING_CLAIMS или REVOKED
+    private void recordFailure(String reason) {
+        meterRegistry.counter("jwt.validation.failures", "reason", reason).increment();
+    }
+
+    // iat хранится с точностью до секунды: токен, выпущенный в ту же секунду, что и отзыв, тоже отклоняется
+    private boolean isRevoked(TokenPrincipal principal) {
+        Instant revokedAt = revokedBefore.get(principal.userId());
+        return revokedAt != null && !principal.issuedAt().isAfter(revokedAt);
+    }
+
+    // Сначала удаляются просроченные токены, затем - истекающие раньше остальных
+    private void evict(Instant now) {
+        verified.values().removeIf(principal -> !principal.expiresAt().isAfter(now));
+        int excess = verified.size() - maxSize * 9 / 10;
+        if (excess > 0) {
+            verified.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.comparing(TokenPrincipal::expiresAt)))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(verified::remove);
+        }
+    }
+
+    private static TokenPrincipal toPrincipal(Claims claims) {
+        Object id = claims.get("id");
+        Object roles = claims.get("roles");
+        if (!(id instanceof Number) || !(roles instanceof List<?> roleList)
+                || claims.getIssuedAt() == null || claims.getExpiration() == null) {
+            return null;
+        }
+        return new TokenPrincipal(((Number) id).longValue(),
+                claims.getSubject(),
+                claims.get("username", String.class),
+                roleList.stream().map(String::valueOf).toList(),
+                claims.getIssuedAt().toInstant(),
+                claims.getExpiration().toInstant());
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
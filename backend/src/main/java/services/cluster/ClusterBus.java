@@ -0,0 +1,34 @@
+package services.cluster;
+
+import models.ClusterMessage;
+
+import java.util.function.Consumer;
+
+/**
+ * Шина сообщений между узлами, обслуживающими {@code /signal}.
+ * Доставка не гарантируется и не подтверждается: потерянное сообщение равносильно
+ * потере кадра клиентом, а состояние присутствия восстанавливается синхронизацией.
+ */
+public interface ClusterBus {
+
+    /**
+     * Идентификатор этого узла, уникальный в кластере.
+     */
+    String getNodeId();
+
+    /**
+     * Отправляет сообщение всем остальным узлам.
+     */
+    void publish(ClusterMessage message);
+
+    /**
+     * Отправляет сообщение одному узлу.
+     */
+    void send(String nodeId, ClusterMessage message);
+
+    /**
+     * Подписывает обработчик на сообщения, адресованные этому узлу или всем узлам.
+     * Обработчик вызывается в потоке шины и не должен блокироваться надолго.
+     */
+    void subscribe(Consumer<ClusterMessage> listener);
+}
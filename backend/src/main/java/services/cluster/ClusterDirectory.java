@@ -0,0 +1,272 @@
+package services.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.ClusterMessageType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import models.ClusterMessage;
+import models.PresenceEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import services.signaling.CallStateRegistry;
+import services.signaling.PresenceBroadcaster;
+import services.signaling.PresenceIndex;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Пользователи, подключенные к другим узлам кластера.
+ * Каждый узел рассылает изменения присутствия своих пользователей и периодический heartbeat;
+ * при старте узел запрашивает у остальных их списки. Пользователи узла, от которого
+ * давно нет heartbeat, считаются отключившимися.
+ * В heartbeat узел сообщает и свой внешний адрес сигнализации, по которому на него переадресуются клиенты комнат.
+ */
+@Component
+public class ClusterDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterDirectory.class);
+
+    private record RemoteUser(String nodeId, PresenceEntry presence, boolean inCall) {
+    }
+
+    private final ClusterBus bus;
+    private final ObjectMapper objectMapper;
+    private final PresenceIndex presenceIndex;
+    private final PresenceBroadcaster presenceBroadcaster;
+    private final CallStateRegistry callStates;
+    private final Map<Long, RemoteUser> remoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, Long> nodeLastSeen = new ConcurrentHashMap<>();
+    // Узел -> внешний адрес сигнализации
+    private final Map<String, String> nodeUrls = new ConcurrentHashMap<>();
+    private final List<Consumer<Set<Long>>> lostListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> nodeListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${signaling.cluster.heartbeat-ms:2000}")
+    private long heartbeatMs;
+
+    // Узел без heartbeat дольше этого времени считается остановленным
+    @Value("${signaling.cluster.node-timeout-ms:10000}")
+    private long nodeTimeoutMs;
+
+    // Адрес /signal этого узла для клиентов; пустой - на узел не переадресуют
+    @Value("${signaling.cluster.advertised-url:}")
+    private String advertisedUrl;
+
+    public ClusterDirectory(ClusterBus bus, ObjectMapper objectMapper, PresenceIndex presenceIndex,
+                            PresenceBroadcaster presenceBroadcaster, CallStateRegistry callStates) {
+        this.bus = bus;
+        this.objectMapper = objectMapper;
+        this.presenceIndex = presenceIndex;
+        this.presenceBroadcaster = presenceBroadcaster;
+        this.callStates = callStates;
+    }
+
+    @PostConstruct
+    public void start() {
+        bus.subscribe(this::onMessage);
+        bus.publish(message(ClusterMessageType.SYNC_REQUEST, null, null));
+        bus.publish(heartbeatMessage());
+        heartbeat.scheduleWithFixedDelay(this::tick, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    public String getNodeId() {
+        return bus.getNodeId();
+    }
+
+    /**
+     * Другие узлы, сообщившие внешний адрес: ID узла -> адрес.
+     */
+    public Map<String, String> getNodeUrls() {
+        return Map.copyOf(nodeUrls);
+    }
+
+    public String getNodeUrl(String nodeId) {
+        return nodeUrls.get(nodeId);
+    }
+
+    /**
+     * Подписка на появление, пропажу и смену адреса узлов.
+     */
+    public void onNodesChanged(Runnable listener) {
+        nodeListeners.add(listener);
+    }
+
+    /**
+     * Узел, к которому подключен пользователь другого узла, или null.
+     */
+    public String locate(Long userId) {
+        RemoteUser user = remoteUsers.get(userId);
+        return user == null ? null : user.nodeId();
+    }
+
+    public boolean isRemoteInCall(Long userId) {
+        RemoteUser user = remoteUsers.get(userId);
+        return user != null && user.inCall();
+    }
+
+    public Collection<PresenceEntry> getRemoteUsers() {
+        return remoteUsers.values().stream().map(RemoteUser::presence).toList();
+    }
+
+    /**
+     * Подписка на пропажу пользователей вместе с их узлом.
+     */
+    public void onUsersLost(Consumer<Set<Long>> listener) {
+        lostListeners.add(listener);
+    }
+
+    public void userConnected(PresenceEntry presence) {
+        bus.publish(message(ClusterMessageType.USER_CONNECTED, presence.id(), objectMapper.valueToTree(presence)));
+    }
+
+    public void userDisconnected(Long userId) {
+        bus.publish(message(ClusterMessageType.USER_DISCONNECTED, userId, null));
+    }
+
+    public void inCallStatusChanged(Long userId, boolean inCall) {
+        bus.publish(message(ClusterMessageType.IN_CALL, userId, objectMapper.getNodeFactory().booleanNode(inCall)));
+    }
+
+    private void onMessage(ClusterMessage message) {
+        if (message.node() == null || message.node().equals(bus.getNodeId())) {
+            return;
+        }
+        nodeLastSeen.put(message.node(), System.currentTimeMillis());
+        switch (message.type()) {
+            case USER_CONNECTED -> {
+                PresenceEntry presence = objectMapper.convertValue(message.payload(), PresenceEntry.class);
+                RemoteUser previous = remoteUsers.put(presence.id(), new RemoteUser(message.node(), presence, false));
+                if (previous == null) {
+                    presenceBroadcaster.userConnected(presence.id(), presence.username());
+                }
+            }
+            case USER_DISCONNECTED -> {
+                // Пользователь мог уже переподключиться к другому узлу
+                boolean[] removed = {false};
+                remoteUsers.computeIfPresent(message.from(), (id, user) -> {
+                    if (!user.nodeId().equals(message.node())) {
+                        return user;
+                    }
+                    removed[0] = true;
+                    return null;
+                });
+                if (removed[0] && presenceIndex.get(message.from()) == null) {
+                    presenceBroadcaster.userDisconnected(message.from());
+                }
+            }
+            case IN_CALL -> {
+                boolean inCall = message.payload() != null && message.payload().asBoolean();
+                RemoteUser updated = remoteUsers.computeIfPresent(message.from(), (id, user) ->
+                        user.nodeId().equals(message.node()) ? new RemoteUser(user.nodeId(), user.presence(), inCall) : user);
+                if (updated != null) {
+                    presenceBroadcaster.inCallStatusChanged(message.from(), inCall);
+                }
+            }
+            case SYNC_REQUEST -> sendSnapshot(message.node());
+            case HEARTBEAT -> updateNodeUrl(message.node(), message.payload());
+            case NODE_LEFT -> {
+                nodeLastSeen.remove(message.node());
+                dropNode(message.node());
+            }
+            default -> {
+                // Остальное обрабатывают сигнализация и маршрутизация комнат
+            }
+        }
+    }
+
+    private void updateNodeUrl(String nodeId, JsonNode payload) {
+        String url = payload == null || payload.isNull() ? null : payload.asText();
+        String previous = url == null ? nodeUrls.remove(nodeId) : nodeUrls.put(nodeId, url);
+        if (!Objects.equals(previous, url)) {
+            logger.info("Cluster node {} is reachable at {}", nodeId, url);
+            nodeListeners.forEach(Runnable::run);
+        }
+    }
+
+    private void sendSnapshot(String nodeId) {
+        bus.send(nodeId, heartbeatMessage());
+        for (PresenceEntry presence : presenceIndex.getAll()) {
+            bus.send(nodeId, message(ClusterMessageType.USER_CONNECTED, presence.id(), objectMapper.valueToTree(presence)));
+            if (callStates.isInCall(presence.id())) {
+                bus.send(nodeId, message(ClusterMessageType.IN_CALL, presence.id(),
+                        objectMapper.getNodeFactory().booleanNode(true)));
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            bus.publish(heartbeatMessage());
+            long deadline = System.currentTimeMillis() - nodeTimeoutMs;
+            nodeLastSeen.entrySet().removeIf(entry -> {
+                if (entry.getValue() >= deadline) {
+                    return false;
+                }
+                dropNode(entry.getKey());
+                return true;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private void dropNode(String nodeId) {
+        Set<Long> lost = remoteUsers.entrySet().stream()
+                .filter(entry -> entry.getValue().nodeId().equals(nodeId))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        lost.forEach(userId -> {
+            remoteUsers.remove(userId);
+            if (presenceIndex.get(userId) == null) {
+                presenceBroadcaster.userDisconnected(userId);
+            }
+        });
+        logger.warn("Cluster node {} left, {} of its user(s) marked offline", nodeId, lost.size());
+        if (!lost.isEmpty()) {
+            lostListeners.forEach(listener -> listener.accept(lost));
+        }
+        if (nodeUrls.remove(nodeId) != null) {
+            nodeListeners.forEach(Runnable::run);
+        }
+    }
+
+    private ClusterMessage heartbeatMessage() {
+        JsonNode url = advertisedUrl == null || advertisedUrl.isBlank()
+                ? null : objectMapper.getNodeFactory().textNode(advertisedUrl);
+        return message(ClusterMessageType.HEARTBEAT, null, url);
+    }
+
+    private ClusterMessage message(ClusterMessageType type, Long userId, JsonNode payload) {
+        return new ClusterMessage(type, bus.getNodeId(), userId, null, payload);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        try {
+            // Остальные узлы сразу перестают направлять сюда пользователей и комнаты
+            bus.publish(message(ClusterMessageType.NODE_LEFT, null, null));
+        } catch (RuntimeException e) {
+            logger.debug("Could not announce node shutdown: {}", e.getMessage());
+        }
+    }
+}
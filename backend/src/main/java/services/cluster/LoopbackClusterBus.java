@@ -0,0 +1,90 @@
+package services.cluster;
+
+import models.ClusterMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Шина внутри одного процесса. Узлами кластера являются все экземпляры в JVM
+ * (например, несколько контекстов приложения в тесте); в обычном запуске узел один
+ * и сообщения никуда не уходят. Каждый узел обрабатывает сообщения в своем потоке
+ * в порядке отправки, как и при работе через брокер.
+ */
+public class LoopbackClusterBus implements ClusterBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackClusterBus.class);
+
+    private static final Map<String, LoopbackClusterBus> NODES = new ConcurrentHashMap<>();
+
+    private final String nodeId;
+    private final List<Consumer<ClusterMessage>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+
+    public LoopbackClusterBus(String nodeId) {
+        this.nodeId = nodeId;
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-bus-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (NODES.putIfAbsent(nodeId, this) != null) {
+            dispatcher.shutdownNow();
+            throw new IllegalStateException("Cluster node " + nodeId + " is already registered in this JVM");
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        NODES.values().forEach(node -> {
+            if (node != this) {
+                node.deliver(message);
+            }
+        });
+    }
+
+    @Override
+    public void send(String nodeId, ClusterMessage message) {
+        LoopbackClusterBus node = NODES.get(nodeId);
+        if (node != null) {
+            node.deliver(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> listener) {
+        listeners.add(listener);
+    }
+
+    private void deliver(ClusterMessage message) {
+        try {
+            dispatcher.execute(() -> listeners.forEach(listener -> {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    logger.error("Error handling cluster message {} on node {}", message.type(), nodeId, e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            // Узел останавливается
+        }
+    }
+
+    public void close() {
+        NODES.remove(nodeId, this);
+        dispatcher.shutdownNow();
+    }
+}
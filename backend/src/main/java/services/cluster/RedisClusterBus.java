@@ -0,0 +1,116 @@
+package services.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.ClusterMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Шина на Redis Pub/Sub (подойдет любой совместимый сервер: Redis, Valkey, KeyDB).
+ * Канал {@code <prefix>:all} получают все узлы, {@code <prefix>:node:<id>} - только один.
+ * Сообщения обрабатываются одним потоком, чтобы кадры одного звонка не переупорядочивались.
+ */
+public class RedisClusterBus implements ClusterBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisClusterBus.class);
+
+    private final String nodeId;
+    private final String broadcastChannel;
+    private final String channelPrefix;
+    private final ObjectMapper objectMapper;
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer container;
+    private final ExecutorService dispatcher;
+    private final List<Consumer<ClusterMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisClusterBus(String nodeId, String prefix, RedisConnectionFactory connectionFactory,
+                           ObjectMapper objectMapper) {
+        this.nodeId = nodeId;
+        this.broadcastChannel = prefix + ":all";
+        this.channelPrefix = prefix + ":node:";
+        this.objectMapper = objectMapper;
+        this.redis = new StringRedisTemplate(connectionFactory);
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(dispatcher);
+        container.addMessageListener(this::onMessage,
+                List.of(new ChannelTopic(broadcastChannel), new ChannelTopic(channelPrefix + nodeId)));
+        container.afterPropertiesSet();
+        container.start();
+        logger.info("Cluster bus connected to Redis as node {}", nodeId);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        convertAndSend(broadcastChannel, message);
+    }
+
+    @Override
+    public void send(String nodeId, ClusterMessage message) {
+        convertAndSend(channelPrefix + nodeId, message);
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> listener) {
+        listeners.add(listener);
+    }
+
+    private void convertAndSend(String channel, ClusterMessage message) {
+        try {
+            redis.convertAndSend(channel, objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            logger.error("Could not serialize cluster message {}", message.type(), e);
+        } catch (RuntimeException e) {
+            logger.warn("Could not publish cluster message {} to {}: {}", message.type(), channel, e.getMessage());
+        }
+    }
+
+    private void onMessage(Message raw, byte[] pattern) {
+        ClusterMessage message;
+        try {
+            message = objectMapper.readValue(raw.getBody(), ClusterMessage.class);
+        } catch (IOException e) {
+            logger.warn("Dropping malformed cluster message: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(message.node())) {
+            return; // Собственная рассылка
+        }
+        for (Consumer<ClusterMessage> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                logger.error("Error handling cluster message {} from node {}", message.type(), message.node(), e);
+            }
+        }
+    }
+
+    public void close() throws Exception {
+        container.destroy();
+        dispatcher.shutdownNow();
+    }
+}
@@ -0,0 +1,176 @@
+package services.cluster;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import enums.ClusterMessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import models.ClusterMessage;
+import models.RoomRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Размещение групповых комнат по узлам кластера.
+ * Новая комната открывается на узле, выбранном консистентным хешированием имени комнаты
+ * по кольцу узлов, сообщивших внешний адрес. Открытая комната закреплена за своим узлом
+ * до закрытия: узлы рассылают открытие и закрытие комнат, и вход в уже открытую комнату
+ * направляется туда, где она открыта, даже если кольцо с тех пор изменилось.
+ */
+@Component
+public class RoomRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomRouter.class);
+
+    private final ClusterBus bus;
+    private final ClusterDirectory directory;
+    private final Counter redirects;
+    // Комнаты других узлов: имя -> узел
+    private final Map<String, String> remoteRooms = new ConcurrentHashMap<>();
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet();
+    private volatile NavigableMap<Long, String> ring = new TreeMap<>();
+
+    // Точек на узел в кольце: чем больше, тем равномернее распределение
+    @Value("${signaling.cluster.rooms.virtual-nodes:128}")
+    private int virtualNodes;
+
+    public RoomRouter(ClusterBus bus, ClusterDirectory directory, MeterRegistry meterRegistry) {
+        this.bus = bus;
+        this.directory = directory;
+        this.redirects = Counter.builder("signaling.rooms.redirects")
+                .description("Room joins redirected to another node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        bus.subscribe(this::onMessage);
+        directory.onNodesChanged(this::rebuildRing);
+        rebuildRing();
+        bus.publish(message(ClusterMessageType.ROOM_SYNC_REQUEST, null));
+    }
+
+    /**
+     * Куда направить вход в комнату.
+     *
+     * @return Узел и адрес для переадресации или null, если комнату обслуживает этот узел.
+     */
+    public RoomRoute route(String roomName) {
+        if (roomName == null || localRooms.contains(roomName)) {
+            return null;
+        }
+        String node = remoteRooms.get(roomName);
+        if (node == null) {
+            node = owner(ring, roomName);
+        }
+        RoomRoute route = routeTo(node);
+        if (route != null) {
+            redirects.increment();
+        }
+        return route;
+    }
+
+    /**
+     * Узел, которому передается комната при остановке этого узла, или null, если других узлов нет.
+     */
+    public RoomRoute handoff(String roomName) {
+        NavigableMap<Long, String> others = buildRing(directory.getNodeUrls().keySet());
+        return routeTo(owner(others, roomName));
+    }
+
+    public void roomOpened(String roomName) {
+        localRooms.add(roomName);
+        String previous = remoteRooms.remove(roomName);
+        if (previous != null) {
+            // Оба узла открыли комнату одновременно, пока кольцо расходилось
+            logger.warn("Room {} is also open on node {}", roomName, previous);
+        }
+        bus.publish(message(ClusterMessageType.ROOM_OPENED, roomName));
+    }
+
+    public void roomClosed(String roomName) {
+        if (localRooms.remove(roomName)) {
+            bus.publish(message(ClusterMessageType.ROOM_CLOSED, roomName));
+        }
+    }
+
+    private RoomRoute routeTo(String node) {
+        if (node == null || node.equals(bus.getNodeId())) {
+            return null;
+        }
+        String url = directory.getNodeUrl(node);
+        return url == null ? null : new RoomRoute(node, url);
+    }
+
+    private void onMessage(ClusterMessage message) {
+        if (message.node() == null || message.node().equals(bus.getNodeId())) {
+            return;
+        }
+        switch (message.type()) {
+            case ROOM_OPENED -> remoteRooms.put(message.payload().asText(), message.node());
+            case ROOM_CLOSED -> remoteRooms.remove(message.payload().asText(), message.node());
+            case ROOM_SYNC_REQUEST -> localRooms.forEach(room ->
+                    bus.send(message.node(), message(ClusterMessageType.ROOM_OPENED, room)));
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Перестраивает кольцо при изменении состава узлов. Комнаты пропавших узлов забываются:
+     * их участники переподключаются и попадают на нового владельца по кольцу.
+     */
+    private void rebuildRing() {
+        Set<String> nodes = new HashSet<>(directory.getNodeUrls().keySet());
+        remoteRooms.values().removeIf(node -> !nodes.contains(node));
+        nodes.add(bus.getNodeId());
+        ring = buildRing(nodes);
+        logger.info("Room ring rebuilt with {} node(s)", nodes.size());
+    }
+
+    private NavigableMap<Long, String> buildRing(Set<String> nodes) {
+        NavigableMap<Long, String> points = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+        return points;
+    }
+
+    private static String owner(NavigableMap<Long, String> points, String roomName) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = points.ceilingEntry(hash(roomName));
+        return (entry != null ? entry : points.firstEntry()).getValue();
+    }
+
+    // SHA-256, а не String.hashCode: у коротких похожих имен комнат хеши оказываются рядом
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private ClusterMessage message(ClusterMessageType type, String roomName) {
+        return new ClusterMessage(type, bus.getNodeId(), null, null,
+                roomName == null ? null : JsonNodeFactory.instance.textNode(roomName));
+    }
+}
@@ -0,0 +1,234 @@
+package services.signaling;
+
+import enums.CallStatus;
+import models.CallState;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Состояния P2P-звонков пользователей.
+ * Каждый пользователь имеет одну неизменяемую запись {@link CallState}. Переходы,
+ * затрагивающие двух участников, выполняются под блокировками только их полос,
+ * поэтому независимые звонки не конкурируют за общий монитор.
+ */
+@Component
+public class CallStateRegistry {
+
+    private static final int STRIPES = 64;
+
+    private final ConcurrentMap<Long, CallState> states = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public CallStateRegistry() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Регистрирует подключившегося пользователя в статусе IDLE, если у него еще нет состояния.
+     */
+    public void register(Long userId) {
+        states.putIfAbsent(userId, CallState.IDLE);
+    }
+
+    public CallState get(Long userId) {
+        return states.getOrDefault(userId, CallState.IDLE);
+    }
+
+    public boolean isInCall(Long userId) {
+        return !get(userId).isIdle();
+    }
+
+    /**
+     * Число пользователей в указанном статусе. Каждый звонок учитывается у обоих участников.
+     */
+    public long count(CallStatus status) {
+        return states.values().stream().filter(state -> state.status() == status).count();
+    }
+
+    /**
+     * Проверяет, что пользователи связаны звонком (вызов или разговор).
+     */
+    public boolean isPeer(Long userId, Long peerId) {
+        return get(userId).isWith(peerId);
+    }
+
+    /**
+     * Начинает вызов: оба пользователя должны быть подключены (зарегистрированы) и свободны.
+     * Без проверки регистрации вызов только что отключившегося пользователя вернул бы ему
+     * состояние, а вызывающий остался бы в RINGING без ответа.
+     *
+     * @return true, если оба пользователя переведены в статус RINGING.
+     */
+    public boolean startCall(Long callerId, Long calleeId) {
+        if (callerId.equals(calleeId)) {
+            return false;
+        }
+        return withLocks(callerId, calleeId, () -> {
+            if (!states.containsKey(callerId) || !states.containsKey(calleeId)
+                    || !get(callerId).isIdle() || !get(calleeId).isIdle()) {
+                return false;
+            }
+            states.put(callerId, new CallState(CallStatus.RINGING, calleeId));
+            states.put(calleeId, new CallState(CallStatus.RINGING, callerId));
+            return true;
+        });
+    }
+
+    /**
+     * Принимает вызов: пользователи должны быть связаны друг с другом.
+     *
+     * @return true, если оба пользователя переведены в статус IN_CALL.
+     */
+    public boolean answer(Long calleeId, Long callerId) {
+        return withLocks(calleeId, callerId, () -> {
+            if (!get(calleeId).isWith(callerId) || !get(callerId).isWith(calleeId)) {
+                return false;
+            }
+            states.put(calleeId, new CallState(CallStatus.IN_CALL, callerId));
+            states.put(callerId, new CallState(CallStatus.IN_CALL, calleeId));
+            return true;
+        });
+    }
+
+    /**
+     * Завершает звонок по инициативе пользователя. Оба участника освобождаются, только если
+     * они связаны друг с другом; иначе (чужой или устаревший peerId) состояния не меняются.
+     *
+     * @return true, если звонок завершен и оба участника освобождены.
+     */
+    public boolean hangUp(Long userId, Long peerId) {
+        return withLocks(userId, peerId, () -> {
+            if (!get(userId).isWith(peerId) || !get(peerId).isWith(userId)) {
+                return false;
+            }
+            states.put(userId, CallState.IDLE);
+            states.put(peerId, CallState.IDLE);
+            return true;
+        });
+    }
+
+    /**
+     * Начинает вызов со стороны одного участника, когда собеседник обслуживается другим узлом.
+     * Переходы собеседника выполняет его узел.
+     *
+     * @return true, если пользователь был свободен и переведен в статус RINGING.
+     */
+    public boolean reserve(Long userId, Long peerId) {
+        if (userId.equals(peerId)) {
+            return false;
+        }
+        return withLocks(userId, userId, () -> {
+            if (!get(userId).isIdle()) {
+                return false;
+            }
+            states.put(userId, new CallState(CallStatus.RINGING, peerId));
+            return true;
+        });
+    }
+
+    /**
+     * Переводит в статус IN_CALL одного участника, связанного с собеседником на другом узле.
+     */
+    public boolean accept(Long userId, Long peerId) {
+        return withLocks(userId, userId, () -> {
+            if (!get(userId).isWith(peerId)) {
+                return false;
+            }
+            states.put(userId, new CallState(CallStatus.IN_CALL, peerId));
+            return true;
+        });
+    }
+
+    /**
+     * Освобождает одного участника, если он связан с указанным собеседником.
+     *
+     * @return true, если пользователь был освобожден.
+     */
+    public boolean release(Long userId, Long peerId) {
+        return withLocks(userId, userId, () -> {
+            if (!get(userId).isWith(peerId)) {
+                return false;
+            }
+            states.computeIfPresent(userId, (id, state) -> CallState.IDLE);
+            return true;
+        });
+    }
+
+    /**
+     * Пользователи, чей собеседник входит в указанный набор (например, пропавший узел кластера).
+     */
+    public List<Long> findPeersOf(Set<Long> peerIds) {
+        return states.entrySet().stream()
+                .filter(entry -> entry.getValue().peerId() != null && peerIds.contains(entry.getValue().peerId()))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Удаляет состояние отключившегося пользователя и освобождает его собеседника.
+     *
+     * @return ID освобожденного собеседника или null.
+     */
+    public Long disconnect(Long userId) {
+        while (true) {
+            Long peerId = get(userId).peerId();
+            Long lockPeer = peerId != null ? peerId : userId;
+            lock(userId, lockPeer);
+            try {
+                if (!Objects.equals(get(userId).peerId(), peerId)) {
+                    continue; // собеседник сменился между чтением и блокировкой
+                }
+                states.remove(userId);
+                if (peerId != null && get(peerId).isWith(userId)) {
+                    states.put(peerId, CallState.IDLE);
+                    return peerId;
+                }
+                return null;
+            } finally {
+                unlock(userId, lockPeer);
+            }
+        }
+    }
+
+    private <T> T withLocks(Long first, Long second, Supplier<T> action) {
+        lock(first, second);
+        try {
+            return action.get();
+        } finally {
+            unlock(first, second);
+        }
+    }
+
+    // Полосы блокируются в порядке возрастания индекса, чтобы исключить взаимоблокировку
+    private void lock(Long first, Long second) {
+        int a = stripe(first);
+        int b = stripe(second);
+        locks[Math.min(a, b)].lock();
+        if (a != b) {
+            locks[Math.max(a, b)].lock();
+        }
+    }
+
+    private void unlock(Long first, Long second) {
+        int a = stripe(first);
+        int b = stripe(second);
+        if (a != b) {
+            locks[Math.max(a, b)].unlock();
+        }
+        locks[Math.min(a, b)].unlock();
+    }
+
+    private static int stripe(Long userId) {
+        return Math.floorMod(userId.hashCode(), STRIPES);
+    }
+}
@@ -0,0 +1,118 @@
+package services.signaling;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Пакетная пересылка ICE-кандидатов (режим ice-batch).
+ * Кандидаты для одного получателя от одного пира (P2P) или одной конечной точки Kurento
+ * накапливаются в течение короткого окна и отправляются одним кадром:
+ * {@code ice-candidates} для P2P и {@code iceCandidates} для конференций.
+ */
+@Component
+public class IceCandidateBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(IceCandidateBatcher.class);
+
+    /**
+     * Название возможности в параметре {@code features} подключения и в ответе connection-success.
+     */
+    public static final String FEATURE = "ice-batch";
+
+    private record Batch(QueuedWebSocketSession session, ObjectNode frame, ArrayNode candidates) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Batch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ice-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${signaling.ice.batch-window-ms:15}")
+    private long windowMs;
+
+    public IceCandidateBatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Пакетный режим включен на сервере и запрошен клиентом при подключении.
+     */
+    public boolean isEnabledFor(WebSocketSession session) {
+        return windowMs > 0 && Boolean.TRUE.equals(session.getAttributes().get("iceBatch"));
+    }
+
+    /**
+     * Добавляет P2P-кандидата от пользователя fromUserId в пакет получателя.
+     */
+    public void addPeerCandidate(QueuedWebSocketSession recipient, Long fromUserId, JsonNode candidate) {
+        add(recipient.getId() + "|p|" + fromUserId, recipient, candidate, () -> {
+            ObjectNode frame = objectMapper.createObjectNode();
+            frame.put("type", "ice-candidates");
+            frame.put("from", fromUserId);
+            return frame;
+        });
+    }
+
+    /**
+     * Добавляет кандидата конечной точки Kurento участника name в пакет получателя.
+     */
+    public void addRoomCandidate(QueuedWebSocketSession recipient, String name, JsonNode candidate) {
+        add(recipient.getId() + "|r|" + name, recipient, candidate, () -> {
+            ObjectNode frame = objectMapper.createObjectNode();
+            frame.put("id", "iceCandidates");
+            frame.put("name", name);
+            return frame;
+        });
+    }
+
+    private void add(String key, QueuedWebSocketSession recipient, JsonNode candidate,
+                     Supplier<ObjectNode> header) {
+        // Пакет изменяется только под блокировкой записи карты; flush забирает его через remove
+        pending.compute(key, (k, batch) -> {
+            if (batch == null) {
+                ObjectNode frame = header.get();
+                batch = new Batch(recipient, frame, frame.putArray("candidates"));
+                scheduler.schedule(() -> flush(k), windowMs, TimeUnit.MILLISECONDS);
+            }
+            batch.candidates().add(candidate);
+            return batch;
+        });
+    }
+
+    private void flush(String key) {
+        Batch batch = pending.remove(key);
+        if (batch == null) {
+            return;
+        }
+        try {
+            batch.session().sendDroppable(new TextMessage(objectMapper.writeValueAsString(batch.frame())));
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing ICE candidate batch", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,93 @@
+package services.signaling;
+
+import enums.OverflowPolicy;
+import jakarta.annotation.PreDestroy;
+import models.OutboundQueueStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Реестр исходящих очередей сеансов сигнализации.
+ * Оборачивает каждый сеанс в {@link QueuedWebSocketSession} и предоставляет статистику очередей.
+ */
+@Component
+public class OutboundQueueRegistry {
+
+    private final Map<String, QueuedWebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnectedSessions = new AtomicLong();
+    private final ExecutorService writer;
+    private final int maxQueuedMessages;
+    private final long sendTimeLimitMs;
+    private final OverflowPolicy overflowPolicy;
+
+    public OutboundQueueRegistry(@Value("${signaling.outbound.max-queued-messages:256}") int maxQueuedMessages,
+                                 @Value("${signaling.outbound.send-time-limit-ms:10000}") long sendTimeLimitMs,
+                                 @Value("${signaling.outbound.overflow-policy:DROP_STALE}") OverflowPolicy overflowPolicy,
+                                 @Value("${signaling.outbound.writer-threads:0}") int writerThreads,
+                                 @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.overflowPolicy = overflowPolicy;
+        if (virtualThreads) {
+            // Очередь сеанса дренируется не более чем одной задачей, поэтому число потоков ограничено числом сеансов
+            this.writer = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("signaling-writer-", 1).factory());
+            return;
+        }
+        int threads = writerThreads > 0 ? writerThreads : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.writer = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "signaling-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public QueuedWebSocketSession register(WebSocketSession session) {
+        QueuedWebSocketSession queued = new QueuedWebSocketSession(session, this, writer,
+                maxQueuedMessages, sendTimeLimitMs, overflowPolicy);
+        sessions.put(session.getId(), queued);
+        return queued;
+    }
+
+    public QueuedWebSocketSession get(WebSocketSession session) {
+        return sessions.get(session.getId());
+    }
+
+    public void unregister(WebSocketSession session) {
+        sessions.remove(session.getId());
+    }
+
+    public OutboundQueueStats getStats() {
+        long queued = 0;
+        int maxDepth = 0;
+        for (QueuedWebSocketSession session : sessions.values()) {
+            int depth = session.getQueueDepth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return new OutboundQueueStats(sessions.size(), queued, maxDepth,
+                droppedMessages.get(), disconnectedSessions.get());
+    }
+
+    void recordDropped() {
+        droppedMessages.incrementAndGet();
+    }
+
+    void recordDisconnected() {
+        disconnectedSessions.incrementAndGet();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdownNow();
+    }
+}
@@ -0,0 +1,167 @@
+package services.signaling;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Рассылка изменений присутствия (подключение, отключение, статус звонка) всем онлайн-пользователям.
+ * События накапливаются в течение одного такта, сворачиваются по пользователю и сериализуются
+ * один раз в общий кадр, который отправляется всем подписчикам в отдельном потоке.
+ */
+@Component
+public class PresenceBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceBroadcaster.class);
+
+    private enum Kind { CONNECTED, DISCONNECTED, IN_CALL }
+
+    private record PresenceEvent(Kind kind, Long userId, String username, boolean inCall) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, QueuedWebSocketSession> subscribers = new ConcurrentHashMap<>();
+    private final Queue<PresenceEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "presence-broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${signaling.presence.tick-ms:50}")
+    private long tickMs;
+
+    public PresenceBroadcaster(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void subscribe(QueuedWebSocketSession session) {
+        subscribers.put(session.getId(), session);
+    }
+
+    public void unsubscribe(WebSocketSession session) {
+        subscribers.remove(session.getId());
+    }
+
+    public void userConnected(Long userId, String username) {
+        publish(new PresenceEvent(Kind.CONNECTED, userId, username, false));
+    }
+
+    public void userDisconnected(Long userId) {
+        publish(new PresenceEvent(Kind.DISCONNECTED, userId, null, false));
+    }
+
+    public void inCallStatusChanged(Long userId, boolean inCall) {
+        publish(new PresenceEvent(Kind.IN_CALL, userId, null, inCall));
+    }
+
+    private void publish(PresenceEvent event) {
+        pending.add(event);
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        Map<Long, PresenceEvent[]> deltas = new LinkedHashMap<>();
+        PresenceEvent event;
+        while ((event = pending.poll()) != null) {
+            // [0] - последнее подключение/отключение, [1] - последний статус звонка после него
+            PresenceEvent[] delta = deltas.computeIfAbsent(event.userId(), id -> new PresenceEvent[2]);
+            if (event.kind() == Kind.IN_CALL) {
+                delta[1] = event;
+            } else {
+                delta[0] = event;
+                delta[1] = null;
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        ArrayNode events = objectMapper.createArrayNode();
+        deltas.values().forEach(delta -> {
+            if (delta[0] != null) {
+                events.add(toJson(delta[0]));
+            }
+            if (delta[1] != null && (delta[0] == null || delta[0].kind() != Kind.DISCONNECTED)) {
+                events.add(toJson(delta[1]));
+            }
+        });
+
+        TextMessage frame;
+        try {
+            if (events.size() == 1) {
+                frame = new TextMessage(objectMapper.writeValueAsString(events.get(0)));
+            } else {
+                ObjectNode batch = objectMapper.createObjectNode();
+                batch.put("type", "presence-batch");
+                batch.set("events", events);
+                frame = new TextMessage(objectMapper.writeValueAsString(batch));
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing presence batch", e);
+            return;
+        }
+
+        broadcast(frame);
+    }
+
+    /**
+     * Ставит готовый кадр в очереди всех подписчиков.
+     * Кадры не отбрасываются при переполнении: это изменения, а не снимок, и без пропущенного
+     * кадра список онлайн-пользователей у клиента разошелся бы с сервером. Кадров не больше
+     * одного за такт, а клиент, который не успевает и за ними, отключается и при переподключении
+     * получает полный список.
+     */
+    void broadcast(TextMessage frame) {
+        subscribers.values().forEach(session -> session.sendMessage(frame));
+    }
+
+    private ObjectNode toJson(PresenceEvent event) {
+        ObjectNode node = objectMapper.createObjectNode();
+        switch (event.kind()) {
+            case CONNECTED -> {
+                node.put("type", "user-connected");
+                node.put("userId", event.userId());
+                node.put("username", event.username());
+            }
+            case DISCONNECTED -> {
+                node.put("type", "user-disconnected");
+                node.put("userId", event.userId());
+            }
+            case IN_CALL -> {
+                node.put("type", "user-in-call-status-changed");
+                node.put("userId", event.userId());
+                node.put("inCall", event.inCall());
+            }
+        }
+        return node;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
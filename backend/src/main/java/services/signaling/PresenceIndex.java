@@ -0,0 +1,36 @@
+package services.signaling;
+
+import models.PresenceEntry;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс онлайн-пользователей в памяти.
+ * Заполняется данными, полученными при установлении WebSocket-соединения,
+ * чтобы список онлайн-пользователей не требовал обращений к базе данных.
+ */
+@Component
+public class PresenceIndex {
+
+    private final Map<Long, PresenceEntry> online = new ConcurrentHashMap<>();
+
+    public void add(PresenceEntry entry) {
+        online.put(entry.id(), entry);
+    }
+
+    public void remove(Long userId) {
+        online.remove(userId);
+    }
+
+    public PresenceEntry get(Long userId) {
+        return online.get(userId);
+    }
+
+    public Collection<PresenceEntry> getAll() {
+        return Collections.unmodifiableCollection(online.values());
+    }
+}
@@ -0,0 +1,179 @@
+package services.signaling;
+
+import enums.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сеанс WebSocket с ограниченной исходящей очередью.
+ * Отправители только добавляют сообщение в очередь, запись в сокет выполняется
+ * асинхронно в пуле писателей, поэтому медленный клиент не блокирует остальных.
+ * Сообщения, помеченные как устаревающие (ICE-кандидаты), при
+ * переполнении отбрасываются первыми; безнадежно отставшие клиенты отключаются.
+ */
+public class QueuedWebSocketSession extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueuedWebSocketSession.class);
+
+    private record Frame(WebSocketMessage<?> message, boolean droppable) {
+    }
+
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final OutboundQueueRegistry registry;
+    private final Executor writer;
+    private final int maxQueuedMessages;
+    private final long sendTimeLimitNanos;
+    private final OverflowPolicy overflowPolicy;
+
+    private boolean draining;
+    private volatile long sendStartedAt;
+    private volatile boolean closing;
+
+    QueuedWebSocketSession(WebSocketSession delegate, OutboundQueueRegistry registry, Executor writer,
+                           int maxQueuedMessages, long sendTimeLimitMs, OverflowPolicy overflowPolicy) {
+        super(delegate);
+        this.registry = registry;
+        this.writer = writer;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.sendTimeLimitNanos = sendTimeLimitMs * 1_000_000L;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Ставит сообщение в очередь. Такие сообщения не отбрасываются при переполнении.
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        enqueue(new Frame(message, false));
+    }
+
+    /**
+     * Ставит в очередь сообщение, которое можно отбросить при переполнении очереди.
+     */
+    public void sendDroppable(WebSocketMessage<?> message) {
+        enqueue(new Frame(message, true));
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Frame frame) {
+        if (closing || !isOpen()) {
+            return;
+        }
+        boolean startDrain = false;
+        boolean disconnect = false;
+        lock.lock();
+        try {
+            if (isSendTimeLimitExceeded()) {
+                disconnect = true;
+            } else if (queue.size() < maxQueuedMessages) {
+                queue.add(frame);
+            } else if (overflowPolicy == OverflowPolicy.DROP_STALE && removeOldestDroppable()) {
+                queue.add(frame);
+            } else if (overflowPolicy == OverflowPolicy.DROP_STALE && frame.droppable()) {
+                registry.recordDropped();
+            } else {
+                disconnect = true;
+            }
+            if (!disconnect && !draining && !queue.isEmpty()) {
+                draining = true;
+                startDrain = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (disconnect) {
+            disconnect();
+        } else if (startDrain) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private boolean removeOldestDroppable() {
+        Iterator<Frame> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().droppable()) {
+                iterator.remove();
+                registry.recordDropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSendTimeLimitExceeded() {
+        long started = sendStartedAt;
+        return started != 0 && System.nanoTime() - started > sendTimeLimitNanos;
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            lock.lock();
+            try {
+                frame = closing ? null : queue.poll();
+                if (frame == null) {
+                    draining = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            write(frame);
+        }
+    }
+
+    private void write(Frame frame) {
+        WebSocketSession delegate = getDelegate();
+        sendStartedAt = System.nanoTime();
+        try {
+            if (delegate.isOpen()) {
+                delegate.sendMessage(frame.message());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to send message to session {}: {}", getId(), e.getMessage());
+        } finally {
+            sendStartedAt = 0;
+        }
+    }
+
+    private void disconnect() {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        lock.lock();
+        try {
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        registry.recordDisconnected();
+        logger.warn("Session {} cannot keep up with outbound messages, closing it", getId());
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.debug("Error closing slow session {}: {}", getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package services.signaling;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.SignalingMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Декодер входящих кадров сигнализации.
+ * Разбирает JSON один раз и по полю-дискриминатору ({@code type} или {@code id})
+ * строит типизированное сообщение {@link SignalingMessage}.
+ */
+@Component
+public class SignalingMessageDecoder {
+
+    private final ObjectMapper objectMapper;
+
+    public SignalingMessageDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Декодирует текст кадра WebSocket.
+     *
+     * @param payload Текст кадра.
+     * @return Типизированное сообщение.
+     * @throws IOException Если кадр не является корректным JSON.
+     */
+    public SignalingMessage decode(String payload) throws IOException {
+        JsonNode root = objectMapper.readTree(payload);
+        if (root == null || !root.isObject()) {
+            return new SignalingMessage.UnknownRoomMessage(null);
+        }
+
+        String type = text(root, "type");
+        if (type != null) {
+            return decodePeerMessage(type, root);
+        }
+        return decodeRoomMessage(text(root, "id"), root);
+    }
+
+    private SignalingMessage decodePeerMessage(String type, JsonNode root) {
+        Long to = toUserId(root.get("to"));
+        return switch (type) {
+            case "call-user" -> new SignalingMessage.CallUser(to, root.get("offer"), root.get("useTurn"));
+            case "make-answer" -> new SignalingMessage.MakeAnswer(to, root.get("answer"), root.get("useTurn"));
+            case "ice-candidate" -> new SignalingMessage.PeerIceCandidate(to, root.get("candidate"));
+            case "hang-up" -> new SignalingMessage.HangUp(to);
+            case "request-turn-renegotiation" -> new SignalingMessage.TurnRenegotiation(to);
+            default -> new SignalingMessage.UnknownPeerMessage(type, to);
+        };
+    }
+
+    private SignalingMessage decodeRoomMessage(String id, JsonNode root) {
+        if (id == null) {
+            return new SignalingMessage.UnknownRoomMessage(null);
+        }
+        return switch (id) {
+            case "joinRoom" -> new SignalingMessage.JoinRoom(text(root, "room"), text(root, "name"),
+                    root.path("redirected").asBoolean(false));
+            case "receiveVideoFrom" -> new SignalingMessage.ReceiveVideoFrom(text(root, "sender"), text(root, "sdpOffer"));
+            case "leaveRoom" -> new SignalingMessage.LeaveRoom();
+            case "onIceCandidate" -> {
+                JsonNode candidate = root.path("candidate");
+                yield new SignalingMessage.RoomIceCandidate(text(root, "name"), text(candidate, "candidate"),
+                        text(candidate, "sdpMid"), candidate.path("sdpMLineIndex").asInt());
+            }
+            default -> new SignalingMessage.UnknownRoomMessage(id);
+        };
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Long toUserId(JsonNode toValue) {
+        if (toValue == null) {
+            return null;
+        }
+        if (toValue.isTextual()) {
+            try {
+                return Long.parseLong(toValue.asText());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else if (toValue.isNumber()) {
+            return toValue.longValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package services.turn;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Проверка доступности STUN/TURN-сервера запросом STUN Binding (RFC 5389) по UDP.
+ */
+public final class StunProbe {
+
+    private static final short BINDING_REQUEST = 0x0001;
+    private static final short BINDING_SUCCESS = 0x0101;
+    private static final int MAGIC_COOKIE = 0x2112A442;
+    private static final int HEADER_LENGTH = 20;
+
+    private StunProbe() {
+    }
+
+    /**
+     * Отправляет Binding Request и ждет ответ с тем же идентификатором транзакции.
+     *
+     * @param address   Адрес сервера.
+     * @param timeoutMs Время ожидания ответа.
+     * @return Время ответа в наносекундах или пустое значение, если ответа нет.
+     */
+    public static OptionalLong probe(InetSocketAddress address, int timeoutMs) {
+        if (address.isUnresolved()) {
+            return OptionalLong.empty();
+        }
+        byte[] transactionId = new byte[12];
+        ThreadLocalRandom.current().nextBytes(transactionId);
+
+        ByteBuffer request = ByteBuffer.allocate(HEADER_LENGTH);
+        request.putShort(BINDING_REQUEST);
+        request.putShort((short) 0);
+        request.putInt(MAGIC_COOKIE);
+        request.put(transactionId);
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(timeoutMs);
+            long startedAt = System.nanoTime();
+            socket.send(new DatagramPacket(request.array(), HEADER_LENGTH, address));
+
+            byte[] buffer = new byte[512];
+            long deadline = startedAt + timeoutMs * 1_000_000L;
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                if (isBindingSuccess(packet, transactionId)) {
+                    return OptionalLong.of(System.nanoTime() - startedAt);
+                }
+                // Посторонний пакет: ждем дальше в пределах исходного таймаута
+                int remainingMs = (int) ((deadline - System.nanoTime()) / 1_000_000);
+                if (remainingMs <= 0) {
+                    return OptionalLong.empty();
+                }
+                socket.setSoTimeout(remainingMs);
+            }
+        } catch (IOException e) {
+            // В том числе SocketTimeoutException: сервер не ответил
+            return OptionalLong.empty();
+        }
+    }
+
+    private static boolean isBindingSuccess(DatagramPacket packet, byte[] transactionId) {
+        if (packet.getLength() < HEADER_LENGTH) {
+            return false;
+        }
+        ByteBuffer response = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+        if (response.getShort() != BINDING_SUCCESS) {
+            return false;
+        }
+        response.getShort(); // длина атрибутов
+        if (response.getInt() != MAGIC_COOKIE) {
+            return false;
+        }
+        byte[] received = new byte[12];
+        response.get(received);
+        return Arrays.equals(received, transactionId);
+    }
+}
@@ -0,0 +1,92 @@
+package services.turn;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TURN-сервер из пула и результаты его проверок.
+ */
+public class TurnServer {
+
+    private static final int DEFAULT_PORT = 3478;
+
+    private final String url;
+    private final String host;
+    private final int port;
+    private final boolean udp;
+    private final AtomicLong recentlyIssued = new AtomicLong();
+
+    private volatile boolean healthy = true;
+    private volatile double rttMillis = -1;
+    private volatile int consecutiveFailures;
+
+    /**
+     * @param url URL в формате ICE: {@code turn:host[:port][?transport=udp|tcp]} или {@code turns:...}.
+     */
+    public TurnServer(String url) {
+        this.url = url;
+        int schemeEnd = url.indexOf(':');
+        String scheme = url.substring(0, schemeEnd);
+        String rest = url.substring(schemeEnd + 1);
+        int queryStart = rest.indexOf('?');
+        String query = queryStart >= 0 ? rest.substring(queryStart + 1) : "";
+        String authority = queryStart >= 0 ? rest.substring(0, queryStart) : rest;
+        URI parsed = URI.create("//" + authority);
+        this.host = parsed.getHost();
+        this.port = parsed.getPort() > 0 ? parsed.getPort() : DEFAULT_PORT;
+        this.udp = "turn".equals(scheme) && !query.contains("transport=tcp");
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Адрес для STUN-проверки; null, если сервер доступен только по TCP/TLS.
+     */
+    public InetSocketAddress getProbeAddress() {
+        return udp ? new InetSocketAddress(host, port) : null;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Сглаженное время ответа на STUN-проверку или -1, если оно неизвестно.
+     */
+    public double getRttMillis() {
+        return rttMillis;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getRecentlyIssued() {
+        return recentlyIssued.get();
+    }
+
+    void recordProbeSuccess(double sampleMillis) {
+        double previous = rttMillis;
+        rttMillis = previous < 0 ? sampleMillis : previous * 0.7 + sampleMillis * 0.3;
+        consecutiveFailures = 0;
+        healthy = true;
+    }
+
+    void recordProbeFailure(int unhealthyAfter) {
+        consecutiveFailures++;
+        if (consecutiveFailures >= unhealthyAfter) {
+            healthy = false;
+        }
+    }
+
+    void issued() {
+        recentlyIssued.incrementAndGet();
+    }
+
+    void resetIssued() {
+        recentlyIssued.set(0);
+    }
+}
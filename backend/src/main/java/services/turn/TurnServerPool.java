@@ -0,0 +1,133 @@
+package services.turn;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import models.TurnServerStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул TURN-серверов с фоновыми STUN-проверками.
+ * Клиентам выдаются лучшие исправные серверы: с наименьшим временем ответа с учетом
+ * числа недавно выданных на них учетных данных. Если исправных серверов нет, выдаются
+ * все, чтобы клиент мог попробовать их сам.
+ */
+@Component
+public class TurnServerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnServerPool.class);
+
+    private final List<TurnServer> servers;
+    private final ScheduledExecutorService prober;
+
+    @Value("${webrtc.turn.max-servers:2}")
+    private int maxServers;
+
+    @Value("${webrtc.turn.probe-interval-ms:10000}")
+    private long probeIntervalMs;
+
+    @Value("${webrtc.turn.probe-timeout-ms:1000}")
+    private int probeTimeoutMs;
+
+    // Сколько проверок подряд должно завершиться неудачей, чтобы сервер исключили из выдачи
+    @Value("${webrtc.turn.unhealthy-after:3}")
+    private int unhealthyAfter;
+
+    // Штраф к времени ответа за каждые учетные данные, выданные за интервал проверок
+    @Value("${webrtc.turn.load-penalty-ms:1.0}")
+    private double loadPenaltyMs;
+
+    public TurnServerPool(@Value("${webrtc.turn.servers:${webrtc.turn.server.url}}") String[] urls) {
+        this.servers = Arrays.stream(urls)
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(TurnServer::new)
+                .toList();
+        AtomicInteger counter = new AtomicInteger();
+        this.prober = Executors.newScheduledThreadPool(Math.max(1, Math.min(servers.size(), 4)), r -> {
+            Thread thread = new Thread(r, "turn-prober-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        for (TurnServer server : servers) {
+            if (server.getProbeAddress() != null) {
+                prober.scheduleWithFixedDelay(() -> probe(server), 0, probeIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        // Нагрузка считается по учетным данным, выданным за последний интервал проверок
+        prober.scheduleWithFixedDelay(() -> servers.forEach(TurnServer::resetIssued),
+                probeIntervalMs, probeIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("TURN pool initialized with {} server(s)", servers.size());
+    }
+
+    /**
+     * Выбирает до {@code webrtc.turn.max-servers} лучших серверов и учитывает выдачу в их нагрузке.
+     */
+    public List<TurnServer> select() {
+        List<TurnServer> healthy = servers.stream().filter(TurnServer::isHealthy).toList();
+        List<TurnServer> candidates = healthy.isEmpty() ? servers : healthy;
+        // Оценки снимаются один раз: нагрузка меняется параллельно с сортировкой
+        List<TurnServer> selected = candidates.stream()
+                .map(server -> Map.entry(server, score(server)))
+                .sorted(Map.Entry.comparingByValue())
+                .limit(maxServers)
+                .map(Map.Entry::getKey)
+                .toList();
+        selected.forEach(TurnServer::issued);
+        return selected;
+    }
+
+    public List<TurnServerStatus> getStatus() {
+        return servers.stream()
+                .map(server -> new TurnServerStatus(server.getUrl(), server.isHealthy(), server.getRttMillis(),
+                        server.getConsecutiveFailures(), server.getRecentlyIssued()))
+                .toList();
+    }
+
+    // Серверы без измерений (TCP/TLS или еще не проверенные) ставятся после измеренных
+    private double score(TurnServer server) {
+        double rtt = server.getRttMillis() >= 0 ? server.getRttMillis() : probeTimeoutMs;
+        return rtt + server.getRecentlyIssued() * loadPenaltyMs;
+    }
+
+    private void probe(TurnServer server) {
+        OptionalLong rtt;
+        try {
+            InetSocketAddress address = server.getProbeAddress();
+            rtt = StunProbe.probe(address, probeTimeoutMs);
+        } catch (RuntimeException e) {
+            logger.debug("STUN probe of {} failed: {}", server.getUrl(), e.getMessage());
+            rtt = OptionalLong.empty();
+        }
+        boolean wasHealthy = server.isHealthy();
+        if (rtt.isPresent()) {
+            server.recordProbeSuccess(rtt.getAsLong() / 1_000_000.0);
+        } else {
+            server.recordProbeFailure(unhealthyAfter);
+        }
+        if (wasHealthy != server.isHealthy()) {
+            logger.warn("TURN server {} is now {}", server.getUrl(), server.isHealthy() ? "healthy" : "unhealthy");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+}
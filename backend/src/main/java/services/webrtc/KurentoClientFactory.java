@@ -0,0 +1,13 @@
+package services.webrtc;
+
+import org.kurento.client.KurentoClient;
+
+/**
+ * Создание клиента медиасервера по URI. По умолчанию - {@link KurentoClient#create(String)};
+ * отдельный бин позволяет подключить, например, локальную заглушку медиасервера.
+ */
+@FunctionalInterface
+public interface KurentoClientFactory {
+
+    KurentoClient create(String uri);
+}
@@ -0,0 +1,48 @@
+package services.webrtc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Пул медиасерверов Kurento. Новые комнаты размещаются на наименее загруженном сервере.
+ */
+public class KurentoClientPool {
+
+    private static final Logger log = LoggerFactory.getLogger(KurentoClientPool.class);
+
+    private final List<MediaServer> servers;
+
+    public KurentoClientPool(List<String> uris, KurentoClientFactory clientFactory) {
+        if (uris.isEmpty()) {
+            throw new IllegalArgumentException("At least one Kurento media server URI is required");
+        }
+        this.servers = uris.stream()
+                .map(uri -> new MediaServer(uri, clientFactory.create(uri)))
+                .toList();
+        log.info("Kurento pool initialized with {} media server(s): {}", servers.size(), uris);
+    }
+
+    public List<MediaServer> getServers() {
+        return servers;
+    }
+
+    /**
+     * Выбирает сервер с наименьшим числом конвейеров и конечных точек и сразу учитывает
+     * на нем новый конвейер. Выбор и учет атомарны: одновременно создаваемые комнаты
+     * не попадают все на один сервер, пока ни один из их конвейеров еще не учтен.
+     */
+    public synchronized MediaServer placePipeline() {
+        MediaServer server = servers.stream()
+                .min(Comparator.comparingInt(MediaServer::getLoad))
+                .orElseThrow();
+        server.pipelineCreated();
+        return server;
+    }
+
+    public void destroy() {
+        servers.forEach(server -> server.getClient().destroy());
+    }
+}
@@ -0,0 +1,73 @@
+package services.webrtc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.kurento.client.Continuation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Адаптер асинхронных вызовов клиента Kurento ({@link Continuation}) к {@link CompletableFuture}.
+ * Время каждого вызова записывается в таймер {@code kurento.rpc} переданного реестра метрик.
+ * Создается {@link RoomManager} и передается его комнатам и участникам.
+ */
+final class KurentoFutures {
+
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    // "операция:результат" -> таймер
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param executor      Пул для завершения future, чтобы последующие этапы не занимали потоки клиента Kurento.
+     * @param meterRegistry Реестр для таймеров вызовов.
+     */
+    KurentoFutures(Executor executor, MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Выполняет асинхронный вызов медиасервера.
+     *
+     * @param name      Имя операции для метрик.
+     * @param operation Вызов, принимающий {@link Continuation}.
+     */
+    <T> CompletableFuture<T> call(String name, Consumer<Continuation<T>> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long startedAt = System.nanoTime();
+        try {
+            operation.accept(new Continuation<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    record(name, "success", startedAt);
+                    executor.execute(() -> future.complete(result));
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    record(name, "error", startedAt);
+                    executor.execute(() -> future.completeExceptionally(cause));
+                }
+            });
+        } catch (RuntimeException e) {
+            record(name, "error", startedAt);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void record(String name, String outcome, long startedAt) {
+        timers.computeIfAbsent(name + ':' + outcome, key -> Timer.builder("kurento.rpc")
+                        .description("Round trip of Kurento media server calls")
+                        .tag("operation", name)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+}
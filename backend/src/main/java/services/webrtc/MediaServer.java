@@ -0,0 +1,60 @@
+package services.webrtc;
+
+import org.kurento.client.KurentoClient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Медиасервер Kurento из пула и счетчики созданных на нем объектов.
+ */
+public class MediaServer {
+
+    private final String uri;
+    private final KurentoClient client;
+    private final AtomicInteger pipelines = new AtomicInteger();
+    private final AtomicInteger endpoints = new AtomicInteger();
+
+    public MediaServer(String uri, KurentoClient client) {
+        this.uri = uri;
+        this.client = client;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public KurentoClient getClient() {
+        return client;
+    }
+
+    public int getPipelines() {
+        return pipelines.get();
+    }
+
+    public int getEndpoints() {
+        return endpoints.get();
+    }
+
+    /**
+     * Оценка нагрузки: каждый конвейер и каждая конечная точка WebRTC считаются единицей.
+     */
+    public int getLoad() {
+        return pipelines.get() + endpoints.get();
+    }
+
+    public void pipelineCreated() {
+        pipelines.incrementAndGet();
+    }
+
+    public void pipelineReleased() {
+        pipelines.decrementAndGet();
+    }
+
+    public void endpointCreated() {
+        endpoints.incrementAndGet();
+    }
+
+    public void endpointReleased() {
+        endpoints.decrementAndGet();
+    }
+}
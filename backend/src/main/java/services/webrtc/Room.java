@@ -6,46 +6,99 @@ import org.kurento.client.Continuation;
 import org.kurento.client.MediaPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.WebSocketSession;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.QueuedWebSocketSession;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class Room implements Closeable {
     private final Logger log = LoggerFactory.getLogger(Room.class);
 
     private final ConcurrentMap<String, UserSession> participants = new ConcurrentHashMap<>();
     private final MediaPipeline pipeline;
+    private final MediaServer mediaServer;
+    private final KurentoFutures kurento;
+    private final IceCandidateBatcher iceBatcher;
     private final String name;
+    private final AtomicInteger pendingJoins = new AtomicInteger();
 
     public String getName() {
         return name;
     }
 
-    public Room(String name, MediaPipeline pipeline) {
+    Room(String name, MediaPipeline pipeline, MediaServer mediaServer, KurentoFutures kurento,
+         IceCandidateBatcher iceBatcher) {
         this.name = name;
         this.pipeline = pipeline;
-        log.info("ROOM {} has been created", name);
+        this.mediaServer = mediaServer;
+        this.kurento = kurento;
+        this.iceBatcher = iceBatcher;
+        log.info("ROOM {} has been created on media server {}", name, mediaServer.getUri());
     }
 
-    public UserSession join(String userName, WebSocketSession session) throws IOException {
+    /**
+     * Медиасервер, на котором размещен конвейер комнаты. Не меняется до закрытия комнаты.
+     */
+    public MediaServer getMediaServer() {
+        return mediaServer;
+    }
+
+    /**
+     * Добавляет участника после создания его исходящей конечной точки.
+     * Если участник вышел раньше ({@link #leave(UserSession)} закрывает сеанс), он не добавляется
+     * и остальные о нем не уведомляются; конечную точку освобождает закрытие сеанса.
+     *
+     * @param onCreated Вызывается с новым участником до начала создания конечной точки, чтобы выход
+     *                  и последующие сообщения находили сеанс еще до готовности конечной точки.
+     * @return Future с сеансом участника; завершается {@link CancellationException}, если участник вышел до входа.
+     */
+    public CompletableFuture<UserSession> join(String userName, QueuedWebSocketSession session,
+                                               Consumer<UserSession> onCreated) {
         log.info("USER {}: trying to join room {}", userName, this.name);
-        UserSession participant = new UserSession(userName, this.name, session, this.pipeline);
-        join(participant);
-        participants.put(userName, participant);
-        return participant;
+        UserSession participant = new UserSession(userName, this.name, session, this.pipeline, this.mediaServer,
+                this.kurento, this.iceBatcher);
+        onCreated.accept(participant);
+        participant.createOutgoingEndpoint();
+        return participant.getOutgoingWebRtcPeer().thenApply(outgoing -> {
+            if (participant.isClosed()) {
+                throw leftBeforeJoin(participant);
+            }
+            try {
+                join(participant);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            participants.put(userName, participant);
+            // leave() закрывает сеанс до удаления из participants, поэтому выход, совпавший с put, виден здесь
+            if (participant.isClosed()) {
+                removeParticipant(participant);
+                throw leftBeforeJoin(participant);
+            }
+            return participant;
+        });
+    }
+
+    private CancellationException leftBeforeJoin(UserSession participant) {
+        log.debug("USER {}: left room {} before joining", participant.getName(), this.name);
+        return new CancellationException("Participant " + participant.getName() + " left before joining");
     }
 
 
     public void leave(UserSession user) throws IOException {
         log.debug("USER {}: leaving room {}", user.getName(), this.name);
-        this.removeParticipant(user.getName());
         user.close();
+        this.removeParticipant(user);
     }
 
 
@@ -91,6 +144,7 @@ public class Room implements Closeable {
 
         participants.clear();
 
+        mediaServer.pipelineReleased();
         pipeline.release(new Continuation<Void>() {
 
             @Override
@@ -110,8 +164,36 @@ public class Room implements Closeable {
     public Collection<UserSession> getParticipants() {
         return participants.values();
     }
-    private void removeParticipant(String name) throws IOException {
-        participants.remove(name);
+
+    public int getEndpointCount() {
+        int endpoints = 0;
+        for (UserSession participant : participants.values()) {
+            endpoints += participant.getEndpointCount();
+        }
+        return endpoints;
+    }
+
+    void joinStarted() {
+        pendingJoins.incrementAndGet();
+    }
+
+    void joinFinished() {
+        pendingJoins.decrementAndGet();
+    }
+
+    /**
+     * Комната пуста и никто не находится в процессе входа.
+     */
+    boolean isIdle() {
+        return pendingJoins.get() == 0 && participants.isEmpty();
+    }
+
+    // Остальные уведомляются, только если участник успел войти
+    private void removeParticipant(UserSession user) {
+        String name = user.getName();
+        if (!participants.remove(name, user)) {
+            return;
+        }
 
         log.debug("ROOM {}: notifying all users that {} is leaving", this.name, name);
 
@@ -1,40 +1,285 @@
 package services.webrtc;
 
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-import org.kurento.client.KurentoClient;
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import models.RoomRoute;
+import models.RoomStats;
+import org.kurento.client.MediaPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import services.cluster.RoomRouter;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.QueuedWebSocketSession;
 
+/**
+ * Реестр групповых комнат.
+ * Комната создается один раз на имя: конвейер строится асинхронно, а входы, пришедшие
+ * до его готовности, ожидают того же future. Опустевшая комната закрывается не сразу,
+ * а по истечении периода ожидания, если в нее так никто и не вошел.
+ * Открытие и закрытие комнат сообщается {@link RoomRouter}, чтобы другие узлы направляли входы сюда.
+ */
 @Service
 public class RoomManager {
 
     private final Logger log = LoggerFactory.getLogger(RoomManager.class);
 
-    @Autowired
-    private KurentoClient kurento;
+    private final KurentoClientPool kurentoPool;
+    private final KurentoFutures kurento;
+    private final IceCandidateBatcher iceBatcher;
+    private final RoomRouter roomRouter;
+    private final ConcurrentMap<String, CompletableFuture<Room>> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong completedJoins = new AtomicLong();
+    private final AtomicLong failedJoins = new AtomicLong();
+    private final AtomicLong totalJoinNanos = new AtomicLong();
+    private final AtomicLong maxJoinNanos = new AtomicLong();
 
-    public Room getRoom(String roomName) {
-        log.info("Searching for room {}", roomName);
-        Room room = rooms.get(roomName);
+    @Value("${signaling.rooms.empty-grace-ms:30000}")
+    private long emptyGraceMs;
 
+    public RoomManager(KurentoClientPool kurentoPool,
+                       @Qualifier("kurentoExecutor") ExecutorService kurentoExecutor,
+                       IceCandidateBatcher iceBatcher,
+                       RoomRouter roomRouter,
+                       MeterRegistry meterRegistry) {
+        this.kurentoPool = kurentoPool;
+        this.kurento = new KurentoFutures(kurentoExecutor, meterRegistry);
+        this.iceBatcher = iceBatcher;
+        this.roomRouter = roomRouter;
+    }
+
+    /**
+     * Возвращает комнату, создавая ее при первом обращении.
+     *
+     * @param roomName Имя комнаты.
+     * @return Future, завершающийся после создания конвейера комнаты.
+     */
+    public CompletableFuture<Room> getRoom(String roomName) {
+        CompletableFuture<Room> existing = rooms.get(roomName);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<Room> created = new CompletableFuture<>();
+        existing = rooms.putIfAbsent(roomName, created);
+        if (existing != null) {
+            return existing;
+        }
+        roomRouter.roomOpened(roomName);
+        createPipeline(roomName, created);
+        return created;
+    }
+
+    /**
+     * Добавляет участника в комнату, когда она будет готова.
+     *
+     * @param onCreated Вызывается с новым участником сразу после его создания, до готовности
+     *                  конечной точки, чтобы его выход и последующие сообщения уже находили сеанс.
+     * @return Future с сеансом участника; завершается {@link CancellationException}, если участник
+     *         вышел до завершения входа (такой вход не учитывается в статистике).
+     */
+    public CompletableFuture<UserSession> join(String roomName, String userName, QueuedWebSocketSession session,
+                                               Consumer<UserSession> onCreated) {
+        long startedAt = System.nanoTime();
+        return join(roomName, userName, session, onCreated, startedAt)
+                .whenComplete((user, error) -> {
+                    if (!isCancelled(error)) {
+                        recordJoin(startedAt, error == null);
+                    }
+                });
+    }
+
+    /**
+     * Вход прерван выходом участника (см. {@link Room#join}).
+     */
+    public static boolean isCancelled(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof CancellationException;
+    }
+
+    private CompletableFuture<UserSession> join(String roomName, String userName, QueuedWebSocketSession session,
+                                                Consumer<UserSession> onCreated, long startedAt) {
+        return getRoom(roomName).thenCompose(room -> {
+            if (!reserve(room)) {
+                // Комнату успели закрыть между получением и входом - создаем заново
+                return join(roomName, userName, session, onCreated, startedAt);
+            }
+            CompletableFuture<UserSession> joined;
+            try {
+                joined = room.join(userName, session, onCreated);
+            } catch (RuntimeException e) {
+                joined = CompletableFuture.failedFuture(e);
+            }
+            return joined.whenComplete((user, error) -> {
+                room.joinFinished();
+                scheduleReclaimIfIdle(room);
+            });
+        });
+    }
+
+    /**
+     * Статистика комнат, их конечных точек и времени входа (от запроса до создания исходящей конечной точки и рассылки уведомлений).
+     */
+    public RoomStats getStats() {
+        int roomCount = 0;
+        int participantCount = 0;
+        int endpointCount = 0;
+        int maxRoomEndpoints = 0;
+        for (CompletableFuture<Room> future : rooms.values()) {
+            Room room = completed(future);
+            if (room != null) {
+                roomCount++;
+                participantCount += room.getParticipants().size();
+                int endpoints = room.getEndpointCount();
+                endpointCount += endpoints;
+                maxRoomEndpoints = Math.max(maxRoomEndpoints, endpoints);
+            }
+        }
+        long count = completedJoins.get();
+        double average = count == 0 ? 0 : totalJoinNanos.get() / (double) count / 1_000_000;
+        return new RoomStats(roomCount, participantCount, endpointCount, maxRoomEndpoints, count, failedJoins.get(),
+                average, maxJoinNanos.get() / 1_000_000.0);
+    }
+
+    private void recordJoin(long startedAt, boolean success) {
+        if (!success) {
+            failedJoins.incrementAndGet();
+            return;
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        completedJoins.incrementAndGet();
+        totalJoinNanos.addAndGet(elapsed);
+        maxJoinNanos.accumulateAndGet(elapsed, Math::max);
+        log.debug("Room join completed in {} ms", elapsed / 1_000_000);
+    }
+
+    /**
+     * Выводит участника из его комнаты. Опустевшая комната будет закрыта по истечении периода ожидания.
+     */
+    public void leave(UserSession user) throws IOException {
+        Room room = completed(rooms.get(user.getRoomName()));
         if (room == null) {
-            log.info("Room {} not found. Creating it", roomName);
-            room = new Room(roomName, kurento.createMediaPipeline());
-            rooms.put(roomName, room);
+            user.close();
+            return;
         }
-        log.info("Room {} found!", roomName);
-        return room;
+        room.leave(user);
+        scheduleReclaimIfIdle(room);
     }
 
-    public void removeRoom(Room room) {
-        this.rooms.remove(room.getName());
-        room.close();
-        log.info("Room {} removed and closed", room.getName());
+    private void createPipeline(String roomName, CompletableFuture<Room> future) {
+        // Комната остается на выбранном сервере до закрытия
+        MediaServer server = kurentoPool.placePipeline();
+        kurento.<MediaPipeline>call("createPipeline", cont -> server.getClient().createMediaPipeline(cont))
+                .whenComplete((pipeline, cause) -> {
+                    if (cause == null) {
+                        future.complete(new Room(roomName, pipeline, server, kurento, iceBatcher));
+                        return;
+                    }
+                    log.error("Could not create media pipeline for room {} on {}", roomName, server.getUri(), cause);
+                    server.pipelineReleased();
+                    if (rooms.remove(roomName, future)) {
+                        roomRouter.roomClosed(roomName);
+                    }
+                    future.completeExceptionally(cause);
+                });
+    }
+
+    // Вход и закрытие синхронизируются блокировкой записи карты для имени комнаты
+    private boolean reserve(Room room) {
+        boolean[] reserved = {false};
+        rooms.computeIfPresent(room.getName(), (name, future) -> {
+            if (completed(future) == room) {
+                room.joinStarted();
+                reserved[0] = true;
+            }
+            return future;
+        });
+        return reserved[0];
+    }
+
+    private void scheduleReclaimIfIdle(Room room) {
+        if (room.isIdle()) {
+            reaper.schedule(() -> reclaim(room), emptyGraceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reclaim(Room room) {
+        boolean[] removed = {false};
+        rooms.computeIfPresent(room.getName(), (name, future) -> {
+            if (completed(future) == room && room.isIdle()) {
+                removed[0] = true;
+                return null;
+            }
+            return future;
+        });
+        if (removed[0]) {
+            roomRouter.roomClosed(room.getName());
+            room.close();
+            log.info("Room {} was empty for {} ms, closed", room.getName(), emptyGraceMs);
+        }
+    }
+
+    private static Room completed(CompletableFuture<Room> future) {
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    /**
+     * При остановке узла участникам открытых комнат предлагается перейти на узел,
+     * которому комната достанется по кольцу без этого узла.
+     */
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (CompletableFuture<Room> future : rooms.values()) {
+            Room room = completed(future);
+            if (room != null) {
+                handoff(room);
+            }
+        }
+    }
+
+    private void handoff(Room room) {
+        RoomRoute route = roomRouter.handoff(room.getName());
+        if (route == null) {
+            return;
+        }
+        JsonObject redirect = new JsonObject();
+        redirect.addProperty("id", "roomRedirect");
+        redirect.addProperty("room", room.getName());
+        redirect.addProperty("node", route.node());
+        redirect.addProperty("url", route.url());
+        redirect.addProperty("handoff", true);
+        for (UserSession participant : room.getParticipants()) {
+            try {
+                participant.sendMessage(redirect);
+            } catch (IOException e) {
+                log.debug("PARTICIPANT {}: could not send room handoff: {}", participant.getName(), e.getMessage());
+            }
+        }
+        log.info("Room {} handed off to node {}", room.getName(), route.node());
     }
-}
\ No newline at end of file
+}
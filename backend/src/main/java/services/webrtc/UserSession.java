@@ -1,6 +1,8 @@
 package services.webrtc;
 
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.gson.JsonObject;
 import org.kurento.client.*;
 import org.kurento.jsonrpc.JsonUtils;
@@ -8,9 +10,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.QueuedWebSocketSession;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -19,43 +26,63 @@ public class UserSession implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(UserSession.class);
 
     private final String name;
-    private final WebSocketSession session;
+    private final QueuedWebSocketSession session;
 
     private final MediaPipeline pipeline;
+    private final MediaServer mediaServer;
+    private final KurentoFutures kurento;
+    private final IceCandidateBatcher iceBatcher;
 
     private final String roomName;
-    private final WebRtcEndpoint outgoingMedia;
-    private final ConcurrentMap<String, WebRtcEndpoint> incomingMedia = new ConcurrentHashMap<>();
+    private final CompletableFuture<WebRtcEndpoint> outgoingMedia;
+    private final ConcurrentMap<String, CompletableFuture<WebRtcEndpoint>> incomingMedia = new ConcurrentHashMap<>();
+    // Конечные точки, для которых обработан SDP offer; кандидаты клиента добавляются только после него
+    private final ConcurrentMap<String, CompletableFuture<WebRtcEndpoint>> negotiated = new ConcurrentHashMap<>();
+    // Участник вышел или закрыл соединение; вход, еще ожидающий конечную точку, не завершается
+    private volatile boolean closed;
 
-    public UserSession(final String name, String roomName, final WebSocketSession session,
-                       MediaPipeline pipeline) {
+    /**
+     * Создает участника; исходящая конечная точка создается {@link #createOutgoingEndpoint()}.
+     *
+     * @param kurento    Вызовы медиасервера; этапы после его ответов выполняются в пуле Kurento.
+     * @param iceBatcher Пакетная пересылка кандидатов, если клиент ее запросил.
+     */
+    UserSession(final String name, String roomName, final QueuedWebSocketSession session,
+                MediaPipeline pipeline, MediaServer mediaServer, KurentoFutures kurento,
+                IceCandidateBatcher iceBatcher) {
 
         this.pipeline = pipeline;
+        this.mediaServer = mediaServer;
+        this.kurento = kurento;
+        this.iceBatcher = iceBatcher;
         this.name = name;
         this.session = session;
         this.roomName = roomName;
-        this.outgoingMedia = new WebRtcEndpoint.Builder(pipeline).build();
-
-        this.outgoingMedia.addIceCandidateFoundListener(new EventListener<IceCandidateFoundEvent>() {
-
-            @Override
-            public void onEvent(IceCandidateFoundEvent event) {
-                JsonObject response = new JsonObject();
-                response.addProperty("id", "iceCandidate");
-                response.addProperty("name", name);
-                response.add("candidate", JsonUtils.toJsonObject(event.getCandidate()));
-                try {
-                    synchronized (session) {
-                        session.sendMessage(new TextMessage(response.toString()));
-                    }
-                } catch (IOException e) {
-                    log.debug(e.getMessage());
-                }
+        this.outgoingMedia = new CompletableFuture<>();
+    }
+
+    /**
+     * Начинает асинхронное создание исходящей конечной точки; результат - в {@link #getOutgoingWebRtcPeer()}.
+     * Для уже закрытого участника точка не создается.
+     */
+    void createOutgoingEndpoint() {
+        if (closed) {
+            outgoingMedia.completeExceptionally(new CancellationException("Participant " + name + " is closed"));
+            return;
+        }
+        createEndpoint(name).whenComplete((endpoint, error) -> {
+            if (error != null) {
+                outgoingMedia.completeExceptionally(error);
+            } else {
+                outgoingMedia.complete(endpoint);
             }
         });
     }
 
-    public WebRtcEndpoint getOutgoingWebRtcPeer() {
+    /**
+     * Исходящая конечная точка участника; future завершается после ее создания на медиасервере.
+     */
+    public CompletableFuture<WebRtcEndpoint> getOutgoingWebRtcPeer() {
         return outgoingMedia;
     }
 
@@ -67,6 +94,17 @@ public class UserSession implements Closeable {
         return session;
     }
 
+    /**
+     * Число конечных точек участника: исходящая и по одной входящей на каждого, чье видео он принимает.
+     */
+    public int getEndpointCount() {
+        return 1 + incomingMedia.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
     /**
      * The room to which the user is currently attending.
      *
@@ -76,24 +114,36 @@ public class UserSession implements Closeable {
         return this.roomName;
     }
 
-    public void receiveVideoFrom(final UserSession sender, String sdpOffer) throws IOException {
-        log.info("USER {}: connecting with {}", this.name, sender.getName());
+    /**
+     * Согласует прием видео от участника: подключает конечные точки, обрабатывает offer,
+     * отправляет answer и запускает сбор кандидатов. Все вызовы медиасервера асинхронны.
+     *
+     * @return Future, завершающийся после запуска сбора кандидатов.
+     */
+    public CompletableFuture<Void> receiveVideoFrom(final UserSession sender, String sdpOffer) {
+        log.debug("USER {}: connecting with {}", this.name, sender.getName());
 
         log.trace("USER {}: SdpOffer for {} is {}", this.name, sender.getName(), sdpOffer);
 
-        final String ipSdpAnswer = this.getEndpointForUser(sender).processOffer(sdpOffer);
-        final JsonObject scParams = new JsonObject();
-        scParams.addProperty("id", "receiveVideoAnswer");
-        scParams.addProperty("name", sender.getName());
-        scParams.addProperty("sdpAnswer", ipSdpAnswer);
-
-        log.trace("USER {}: SdpAnswer for {} is {}", this.name, sender.getName(), ipSdpAnswer);
-        this.sendMessage(scParams);
-        log.debug("gather candidates");
-        this.getEndpointForUser(sender).gatherCandidates();
+        CompletableFuture<WebRtcEndpoint> endpoint = this.getEndpointForUser(sender);
+        CompletableFuture<String> answer = endpoint.thenCompose(ep ->
+                kurento.<String>call("processOffer", cont -> ep.processOffer(sdpOffer, cont)));
+        negotiated.put(sender.getName(), answer.thenCombine(endpoint, (sdpAnswer, ep) -> ep));
+
+        return answer.thenCompose(ipSdpAnswer -> {
+            final JsonObject scParams = new JsonObject();
+            scParams.addProperty("id", "receiveVideoAnswer");
+            scParams.addProperty("name", sender.getName());
+            scParams.addProperty("sdpAnswer", ipSdpAnswer);
+
+            log.trace("USER {}: SdpAnswer for {} is {}", this.name, sender.getName(), ipSdpAnswer);
+            session.sendMessage(new TextMessage(scParams.toString()));
+            log.debug("gather candidates");
+            return endpoint.thenCompose(ep -> kurento.<Void>call("gatherCandidates", ep::gatherCandidates));
+        });
     }
 
-    private WebRtcEndpoint getEndpointForUser(final UserSession sender) {
+    private CompletableFuture<WebRtcEndpoint> getEndpointForUser(final UserSession sender) {
         if (sender.getName().equals(name)) {
             log.debug("PARTICIPANT {}: configuring loopback", this.name);
             return outgoingMedia;
@@ -101,117 +151,132 @@ public class UserSession implements Closeable {
 
         log.debug("PARTICIPANT {}: receiving video from {}", this.name, sender.getName());
 
-        WebRtcEndpoint incoming = incomingMedia.get(sender.getName());
-        if (incoming == null) {
-
-            log.debug("PARTICIPANT {}: creating new endpoint for {}", this.name, sender.getName());
-            incoming = new WebRtcEndpoint.Builder(pipeline).build();
+        CompletableFuture<WebRtcEndpoint> incoming = incomingMedia.computeIfAbsent(sender.getName(), senderName -> {
+            log.debug("PARTICIPANT {}: creating new endpoint for {}", this.name, senderName);
+            return createEndpoint(senderName);
+        });
+        // Неудачно созданная точка не должна закрывать повторные попытки
+        incoming.whenComplete((ep, error) -> {
+            if (error != null) {
+                incomingMedia.remove(sender.getName(), incoming);
+            }
+        });
 
-            incoming.addIceCandidateFoundListener(new EventListener<IceCandidateFoundEvent>() {
+        return incoming.thenCompose(in -> sender.getOutgoingWebRtcPeer()
+                .thenCompose(out -> kurento.<Void>call("connect", cont -> out.connect(in, cont)))
+                .thenApply(connected -> {
+                    log.debug("PARTICIPANT {}: obtained endpoint for {}", this.name, sender.getName());
+                    return in;
+                }));
+    }
 
-                @Override
-                public void onEvent(IceCandidateFoundEvent event) {
-                    JsonObject response = new JsonObject();
-                    response.addProperty("id", "iceCandidate");
-                    response.addProperty("name", sender.getName());
-                    response.add("candidate", JsonUtils.toJsonObject(event.getCandidate()));
-                    try {
-                        synchronized (session) {
-                            session.sendMessage(new TextMessage(response.toString()));
-                        }
-                    } catch (IOException e) {
-                        log.debug(e.getMessage());
-                    }
-                }
-            });
+    // Создает конечную точку и подписывается на ее ICE-кандидаты, которые пересылаются клиенту от имени senderName
+    private CompletableFuture<WebRtcEndpoint> createEndpoint(String senderName) {
+        return kurento.<WebRtcEndpoint>call("createEndpoint",
+                        cont -> new WebRtcEndpoint.Builder(pipeline).buildAsync(cont))
+                .thenCompose(endpoint -> {
+                    mediaServer.endpointCreated();
+                    EventListener<IceCandidateFoundEvent> listener = event -> sendIceCandidate(senderName, event.getCandidate());
+                    return kurento.<ListenerSubscription>call("subscribe",
+                                    cont -> endpoint.addIceCandidateFoundListener(listener, cont))
+                            .handle((subscription, error) -> {
+                                if (error != null) {
+                                    release(CompletableFuture.completedFuture(endpoint), "EP for " + senderName);
+                                    throw new CompletionException(error);
+                                }
+                                return endpoint;
+                            });
+                });
+    }
 
-            incomingMedia.put(sender.getName(), incoming);
+    private void sendIceCandidate(String senderName, IceCandidate candidate) {
+        if (iceBatcher.isEnabledFor(session)) {
+            ObjectNode node = JsonNodeFactory.instance.objectNode();
+            node.put("candidate", candidate.getCandidate());
+            node.put("sdpMid", candidate.getSdpMid());
+            node.put("sdpMLineIndex", candidate.getSdpMLineIndex());
+            iceBatcher.addRoomCandidate(session, senderName, node);
+            return;
         }
-
-        log.debug("PARTICIPANT {}: obtained endpoint for {}", this.name, sender.getName());
-        sender.getOutgoingWebRtcPeer().connect(incoming);
-
-        return incoming;
+        JsonObject response = new JsonObject();
+        response.addProperty("id", "iceCandidate");
+        response.addProperty("name", senderName);
+        response.add("candidate", JsonUtils.toJsonObject(candidate));
+        session.sendDroppable(new TextMessage(response.toString()));
     }
 
     public void cancelVideoFrom(final String senderName) {
         log.debug("PARTICIPANT {}: canceling video reception from {}", this.name, senderName);
 
-        final WebRtcEndpoint incoming = incomingMedia.remove(senderName);
+        negotiated.remove(senderName);
+        final CompletableFuture<WebRtcEndpoint> incoming = incomingMedia.remove(senderName);
 
         if (incoming != null) {
             log.debug("PARTICIPANT {}: removing endpoint for {}", this.name, senderName);
-            incoming.release(new Continuation<Void>() {
-                @Override
-                public void onSuccess(Void result) throws Exception {
-                    log.trace("PARTICIPANT {}: Released successfully incoming EP for {}",
-                            UserSession.this.name, senderName);
-                }
-
-                @Override
-                public void onError(Throwable cause) throws Exception {
-                    log.warn("PARTICIPANT {}: Could not release incoming EP for {}", UserSession.this.name,
-                            senderName);
-                }
-            });
+            release(incoming, "incoming EP for " + senderName);
         }
     }
 
 
     @Override
     public void close() throws IOException {
+        closed = true;
         log.debug("PARTICIPANT {}: Releasing resources", this.name);
+        negotiated.clear();
         for (final String remoteParticipantName : incomingMedia.keySet()) {
 
             log.trace("PARTICIPANT {}: Released incoming EP for {}", this.name, remoteParticipantName);
 
-            final WebRtcEndpoint ep = this.incomingMedia.get(remoteParticipantName);
+            final CompletableFuture<WebRtcEndpoint> ep = this.incomingMedia.remove(remoteParticipantName);
+            if (ep != null) {
+                release(ep, "incoming EP for " + remoteParticipantName);
+            }
+        }
+
+        release(outgoingMedia, "outgoing EP");
+    }
 
+    // Освобождает конечную точку, когда (и если) она будет создана
+    private void release(CompletableFuture<WebRtcEndpoint> endpoint, String description) {
+        endpoint.thenAccept(ep -> {
+            mediaServer.endpointReleased();
             ep.release(new Continuation<Void>() {
 
                 @Override
                 public void onSuccess(Void result) throws Exception {
-                    log.trace("PARTICIPANT {}: Released successfully incoming EP for {}",
-                            UserSession.this.name, remoteParticipantName);
+                    log.trace("PARTICIPANT {}: Released successfully {}", UserSession.this.name, description);
                 }
 
                 @Override
                 public void onError(Throwable cause) throws Exception {
-                    log.warn("PARTICIPANT {}: Could not release incoming EP for {}", UserSession.this.name,
-                            remoteParticipantName);
+                    log.warn("PARTICIPANT {}: Could not release {}", UserSession.this.name, description);
                 }
             });
-        }
-
-        outgoingMedia.release(new Continuation<Void>() {
-
-            @Override
-            public void onSuccess(Void result) throws Exception {
-                log.trace("PARTICIPANT {}: Released outgoing EP", UserSession.this.name);
-            }
-
-            @Override
-            public void onError(Throwable cause) throws Exception {
-                log.warn("USER {}: Could not release outgoing EP", UserSession.this.name);
-            }
         });
     }
 
     public void sendMessage(JsonObject message) throws IOException {
         log.debug("USER {}: Sending message {}", name, message);
-        synchronized (session) {
-            session.sendMessage(new TextMessage(message.toString()));
-        }
+        session.sendMessage(new TextMessage(message.toString()));
     }
 
     public void addCandidate(IceCandidate candidate, String name) {
-        if (this.name.compareTo(name) == 0) {
-            outgoingMedia.addIceCandidate(candidate);
-        } else {
-            WebRtcEndpoint webRtc = incomingMedia.get(name);
-            if (webRtc != null) {
-                webRtc.addIceCandidate(candidate);
-            }
+        CompletableFuture<WebRtcEndpoint> endpoint = negotiated.get(name);
+        if (endpoint == null) {
+            endpoint = this.name.compareTo(name) == 0 ? outgoingMedia : incomingMedia.get(name);
+        }
+        if (endpoint != null) {
+            endpoint.thenAccept(webRtc -> webRtc.addIceCandidate(candidate, new Continuation<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    log.debug("PARTICIPANT {}: Could not add ICE candidate for {}: {}",
+                            UserSession.this.name, name, cause.getMessage());
+                }
+            }));
         }
     }
 
@@ -0,0 +1,287 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enums.CallStatus;
+import enums.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import models.CallState;
+import models.PresenceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import services.cluster.ClusterDirectory;
+import services.cluster.LoopbackClusterBus;
+import services.cluster.RoomRouter;
+import services.signaling.CallStateRegistry;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.OutboundQueueRegistry;
+import services.signaling.PresenceBroadcaster;
+import services.signaling.PresenceIndex;
+import services.signaling.SignalingMessageDecoder;
+import services.webrtc.RoomManager;
+import services.webrtc.UserRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сигнализация между двумя узлами на {@link LoopbackClusterBus}: пересылка P2P-звонка,
+ * синхронизация присутствия, уход и пропажа узла, отключение пользователей на всех узлах.
+ */
+class SocketHandlerClusterTest {
+
+    private static final long HEARTBEAT_MS = 50;
+    private static final long NODE_TIMEOUT_MS = 300;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Node> nodes = new ArrayList<>();
+    private Node a;
+    private Node b;
+
+    @BeforeEach
+    void startNodes() {
+        a = new Node("signal-a");
+        b = new Node("signal-b");
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(Node::stop);
+    }
+
+    @Test
+    void relaysCallBetweenNodes() throws Exception {
+        Client alice = a.connect(1);
+        Client bob = b.connect(2);
+        await(() -> "signal-b".equals(a.directory.locate(2L)) && "signal-a".equals(b.directory.locate(1L)));
+
+        alice.send("{\"type\":\"call-user\",\"to\":2,\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\"}}");
+        JsonNode callMade = bob.await("call-made");
+        assertThat(callMade.path("from").asLong()).isEqualTo(1);
+        assertThat(callMade.path("offer").path("sdp").asText()).isEqualTo("v=0");
+        // Каждый узел ведет состояние только своего пользователя
+        assertThat(a.callStates.get(1L)).isEqualTo(new CallState(CallStatus.RINGING, 2L));
+        assertThat(b.callStates.get(2L)).isEqualTo(new CallState(CallStatus.RINGING, 1L));
+        await(() -> b.directory.isRemoteInCall(1L) && a.directory.isRemoteInCall(2L));
+
+        bob.send("{\"type\":\"make-answer\",\"to\":1,\"answer\":{\"type\":\"answer\",\"sdp\":\"v=0\"}}");
+        assertThat(alice.await("answer-made").path("from").asLong()).isEqualTo(2);
+        assertThat(a.callStates.get(1L)).isEqualTo(new CallState(CallStatus.IN_CALL, 2L));
+        assertThat(b.callStates.get(2L)).isEqualTo(new CallState(CallStatus.IN_CALL, 1L));
+
+        alice.send("{\"type\":\"ice-candidate\",\"to\":2,\"candidate\":{\"candidate\":\"candidate:1\"}}");
+        assertThat(bob.await("ice-candidate").path("candidate").path("candidate").asText()).isEqualTo("candidate:1");
+
+        bob.send("{\"type\":\"hang-up\",\"to\":1}");
+        assertThat(alice.await("hang-up").path("from").asLong()).isEqualTo(2);
+        await(() -> a.callStates.get(1L).isIdle());
+        assertThat(b.callStates.get(2L)).isEqualTo(CallState.IDLE);
+    }
+
+    @Test
+    void callToBusyUserOnOtherNodeIsRejected() throws Exception {
+        Client alice = a.connect(1);
+        Client carol = b.connect(3);
+        b.connect(4);
+        await(() -> a.directory.locate(3L) != null);
+        carol.send("{\"type\":\"call-user\",\"to\":4,\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\"}}");
+
+        alice.send("{\"type\":\"call-user\",\"to\":3,\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\"}}");
+
+        assertThat(alice.await("call-rejected").path("reason").asText()).isEqualTo("User is already in a call.");
+        assertThat(a.callStates.get(1L)).isEqualTo(CallState.IDLE);
+        assertThat(b.callStates.get(3L)).isEqualTo(new CallState(CallStatus.RINGING, 4L));
+    }
+
+    @Test
+    void syncsPresenceAndForgetsUsersOfNodeThatLeft() throws Exception {
+        Client alice = a.connect(1);
+        Client bob = b.connect(2);
+        await(() -> a.directory.locate(2L) != null && b.directory.locate(1L) != null);
+        assertThat(a.handler.getOnlineUsers()).extracting(PresenceEntry::id).containsExactlyInAnyOrder(1L, 2L);
+        alice.await("user-connected");
+
+        // Узел, запущенный позже, получает списки остальных
+        Node c = new Node("signal-c");
+        await(() -> c.directory.locate(1L) != null && c.directory.locate(2L) != null);
+
+        b.directory.shutdown();
+
+        await(() -> a.directory.locate(2L) == null && c.directory.locate(2L) == null);
+        assertThat(alice.await("user-disconnected").path("userId").asLong()).isEqualTo(2);
+        assertThat(a.handler.getOnlineUsers()).extracting(PresenceEntry::id).containsExactly(1L);
+        assertThat(bob.isOpen()).isTrue();
+    }
+
+    @Test
+    void nodeTimeoutReleasesCallsWithItsUsers() throws Exception {
+        Client alice = a.connect(1);
+        Client bob = b.connect(2);
+        await(() -> a.directory.locate(2L) != null && b.directory.locate(1L) != null);
+        alice.send("{\"type\":\"call-user\",\"to\":2,\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\"}}");
+        bob.await("call-made");
+        bob.send("{\"type\":\"make-answer\",\"to\":1,\"answer\":{\"type\":\"answer\",\"sdp\":\"v=0\"}}");
+        alice.await("answer-made");
+
+        // Узел a пропал без NODE_LEFT: нет ни heartbeat, ни сообщений
+        a.crash();
+
+        assertThat(bob.await("hang-up").path("from").asLong()).isEqualTo(1);
+        assertThat(b.callStates.get(2L)).isEqualTo(CallState.IDLE);
+        assertThat(b.directory.locate(1L)).isNull();
+    }
+
+    @Test
+    void disconnectUsersClosesSessionsOnOtherNode() throws Exception {
+        Client alice = a.connect(1);
+        Client bob = b.connect(2);
+        Client bobRoom = b.connect(2, true);
+        await(() -> a.directory.locate(2L) != null);
+
+        assertThat(a.handler.disconnectUsers(List.of(2L))).isZero();
+
+        await(() -> !bob.isOpen() && !bobRoom.isOpen());
+        assertThat(alice.isOpen()).isTrue();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Узел сигнализации: обработчик со своей шиной, каталогом и состояниями звонков
+    private final class Node {
+
+        final LoopbackClusterBus bus;
+        final CallStateRegistry callStates = new CallStateRegistry();
+        final OutboundQueueRegistry outboundQueues = new OutboundQueueRegistry(256, 10_000, OverflowPolicy.DROP_STALE,
+                2, false);
+        final PresenceBroadcaster presenceBroadcaster = new PresenceBroadcaster(objectMapper);
+        final IceCandidateBatcher iceBatcher = new IceCandidateBatcher(objectMapper);
+        final ClusterDirectory directory;
+        final SocketHandler handler;
+
+        Node(String nodeId) {
+            bus = new LoopbackClusterBus(nodeId);
+            nodes.add(this);
+            ReflectionTestUtils.setField(presenceBroadcaster, "tickMs", 10L);
+            PresenceIndex presenceIndex = new PresenceIndex();
+            directory = new ClusterDirectory(bus, objectMapper, presenceIndex, presenceBroadcaster, callStates);
+            ReflectionTestUtils.setField(directory, "heartbeatMs", HEARTBEAT_MS);
+            ReflectionTestUtils.setField(directory, "nodeTimeoutMs", NODE_TIMEOUT_MS);
+            handler = new SocketHandler(objectMapper, new SignalingMessageDecoder(objectMapper), presenceBroadcaster,
+                    outboundQueues, callStates, presenceIndex, iceBatcher, bus, directory, new SimpleMeterRegistry());
+            ReflectionTestUtils.setField(handler, "registry", new UserRegistry());
+            ReflectionTestUtils.setField(handler, "roomManager", mock(RoomManager.class));
+            ReflectionTestUtils.setField(handler, "roomRouter", mock(RoomRouter.class));
+            handler.subscribeCluster();
+            directory.start();
+        }
+
+        Client connect(long userId) {
+            return connect(userId, false);
+        }
+
+        Client connect(long userId, boolean roomOnly) {
+            Client client = new Client(this, userId, roomOnly);
+            handler.afterConnectionEstablished(client.session);
+            return client;
+        }
+
+        // Остановка без NODE_LEFT: остальные узлы узнают о ней только по таймауту heartbeat
+        void crash() {
+            ((ScheduledExecutorService) ReflectionTestUtils.getField(directory, "heartbeat")).shutdownNow();
+            bus.close();
+        }
+
+        void stop() {
+            directory.shutdown();
+            bus.close();
+            presenceBroadcaster.shutdown();
+            iceBatcher.shutdown();
+            outboundQueues.shutdown();
+        }
+    }
+
+    // Клиент WebSocket: принятые кадры разбираются, пакеты присутствия раскладываются на события
+    private final class Client {
+
+        final WebSocketSession session = mock(WebSocketSession.class);
+        private final Node node;
+        private final List<JsonNode> received = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        Client(Node node, long userId, boolean roomOnly) {
+            this.node = node;
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("userId", userId);
+            attributes.put("username", "user" + userId);
+            attributes.put("login", "user" + userId + "@example.com");
+            attributes.put("role", "Base");
+            attributes.put("roomOnly", roomOnly);
+            when(session.getId()).thenReturn(node.bus.getNodeId() + "-" + userId + (roomOnly ? "-room" : ""));
+            when(session.getAttributes()).thenReturn(attributes);
+            when(session.isOpen()).thenAnswer(invocation -> open.get());
+            try {
+                doAnswer(invocation -> {
+                    JsonNode frame = objectMapper.readTree(invocation.<TextMessage>getArgument(0).getPayload());
+                    if ("presence-batch".equals(frame.path("type").asText())) {
+                        frame.path("events").forEach(received::add);
+                    } else {
+                        received.add(frame);
+                    }
+                    return null;
+                }).when(session).sendMessage(any());
+                doAnswer(invocation -> {
+                    open.set(false);
+                    return null;
+                }).when(session).close(any(CloseStatus.class));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void send(String payload) throws Exception {
+            node.handler.handleTextMessage(session, new TextMessage(payload));
+        }
+
+        boolean isOpen() {
+            return open.get();
+        }
+
+        JsonNode await(String type) {
+            JsonNode[] found = new JsonNode[1];
+            SocketHandlerClusterTest.await(() -> {
+                found[0] = received.stream().filter(frame -> type.equals(frame.path("type").asText()))
+                        .findFirst().orElse(null);
+                return found[0] != null;
+            });
+            return found[0];
+        }
+    }
+}
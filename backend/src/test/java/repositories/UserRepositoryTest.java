@@ -0,0 +1,50 @@
+package repositories;
+
+import enums.UserRole;
+import models.TokenRevocation;
+import models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Момент отзыва токенов: отсутствующий пользователь отличается от пользователя без отзыва.
+ */
+@DataJpaTest
+@ContextConfiguration(classes = UserRepositoryTest.JpaConfig.class)
+class UserRepositoryTest {
+
+    // Без @SpringBootConfiguration: нагрузочный тест запускает Main на тестовом classpath,
+    // и сканирование компонентов подхватило бы эту конфигурацию
+    @EnableJpaRepositories(basePackageClasses = UserRepository.class)
+    @EntityScan(basePackageClasses = User.class)
+    static class JpaConfig {
+    }
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void findsTokenRevocation() {
+        User user = userRepository.save(new User("user", "user@example.com", "{bcrypt}unused", UserRole.Base));
+
+        assertThat(userRepository.findTokenRevocation(user.getId()))
+                .contains(new TokenRevocation(null));
+
+        Instant at = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        userRepository.updateTokensValidAfter(List.of(user.getId()), at);
+        assertThat(userRepository.findTokenRevocation(user.getId()))
+                .hasValueSatisfying(revocation -> assertThat(revocation.tokensValidAfter()).isEqualTo(at));
+
+        assertThat(userRepository.findTokenRevocation(user.getId() + 1)).isEmpty();
+    }
+}
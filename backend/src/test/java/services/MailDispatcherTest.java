@@ -0,0 +1,252 @@
+package services;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import enums.MailStatus;
+import jakarta.mail.internet.MimeMessage;
+import models.OutboundMail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import repositories.OutboundMailRepository;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Очередь исходящей почты против локального SMTP-сервера GreenMail: отправка,
+ * повтор с задержкой, отказ после исчерпания попыток, захват писем другим узлом
+ * и стирание текста отправленных и брошенных писем.
+ */
+@DataJpaTest
+// Диспетчер пишет результаты собственными UPDATE, как в работе, а не внутри транзакции теста
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = MailDispatcherTest.JpaConfig.class)
+class MailDispatcherTest {
+
+    // Без @SpringBootConfiguration: нагрузочный тест запускает Main на тестовом classpath,
+    // и сканирование компонентов подхватило бы эту конфигурацию
+    @EnableJpaRepositories(basePackageClasses = OutboundMailRepository.class)
+    @EntityScan(basePackageClasses = OutboundMail.class)
+    static class JpaConfig {
+    }
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private OutboundMailRepository mailRepository;
+
+    @BeforeEach
+    void clearQueue() {
+        mailRepository.deleteAll();
+    }
+
+    @Test
+    void sendsQueuedMail() throws Exception {
+        EmailService emailService = new EmailService();
+        MailDispatcher dispatcher = dispatcher(smtpSender());
+        ReflectionTestUtils.setField(emailService, "mailRepository", mailRepository);
+        ReflectionTestUtils.setField(emailService, "mailDispatcher", dispatcher);
+        ReflectionTestUtils.setField(emailService, "baseUrl", "http://localhost");
+
+        // Постановка в очередь будит диспетчер без ожидания опроса
+        emailService.sendTwoFactorCode("user@example.com", "123456");
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(received[0].getSubject()).isEqualTo("Your Two-Factor Authentication Code");
+        assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("user@example.com");
+
+        // Результат записывается после ответа SMTP-сервера
+        long deadline = System.currentTimeMillis() + 5000;
+        while (single().getStatus() != MailStatus.SENT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        dispatcher.shutdown();
+        OutboundMail mail = single();
+        assertThat(mail.getStatus()).isEqualTo(MailStatus.SENT);
+        assertThat(mail.getAttempts()).isEqualTo(1);
+        assertThat(mail.getSentAt()).isNotNull();
+        assertThat(mail.getClaimToken()).isNull();
+        // Код 2FA не хранится после отправки
+        assertThat(mail.getBody()).isEmpty();
+    }
+
+    @Test
+    void retriesWithBackoffWhenSmtpIsUnavailable() throws IOException {
+        mailRepository.save(new OutboundMail("user@example.com", "Subject", "Body"));
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher(unreachableSender()).dispatch();
+
+        OutboundMail failed = single();
+        assertThat(failed.getStatus()).isEqualTo(MailStatus.PENDING);
+        assertThat(failed.getAttempts()).isEqualTo(1);
+        assertThat(failed.getLastError()).isNotBlank();
+        assertThat(failed.getNextAttemptAt()).isAfterOrEqualTo(before.plusSeconds(60));
+        assertThat(failed.getClaimToken()).isNull();
+        assertThat(failed.getBody()).isEqualTo("Body");
+
+        // До наступления next_attempt_at письмо не отправляется
+        MailDispatcher working = dispatcher(smtpSender());
+        working.dispatch();
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+
+        failed.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        mailRepository.save(failed);
+        working.dispatch();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        OutboundMail sent = single();
+        assertThat(sent.getStatus()).isEqualTo(MailStatus.SENT);
+        assertThat(sent.getAttempts()).isEqualTo(2);
+        assertThat(sent.getLastError()).isNull();
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws IOException {
+        mailRepository.save(new OutboundMail("user@example.com", "Subject", "Body"));
+        MailDispatcher dispatcher = dispatcher(unreachableSender());
+        ReflectionTestUtils.setField(dispatcher, "retryBaseMs", 0L);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch();
+        }
+
+        OutboundMail mail = single();
+        assertThat(mail.getStatus()).isEqualTo(MailStatus.FAILED);
+        assertThat(mail.getAttempts()).isEqualTo(3);
+        assertThat(mail.getBody()).isEmpty();
+    }
+
+    @Test
+    void clearsBodiesOfFinishedMail() {
+        OutboundMail sent = new OutboundMail("sent@example.com", "Subject", "Code 123456");
+        sent.setStatus(MailStatus.SENT);
+        OutboundMail failed = new OutboundMail("failed@example.com", "Subject", "Code 654321");
+        failed.setStatus(MailStatus.FAILED);
+        mailRepository.saveAll(List.of(sent, failed,
+                new OutboundMail("pending@example.com", "Subject", "Code 111111")));
+
+        assertThat(mailRepository.clearFinishedBodies(MailStatus.PENDING)).isEqualTo(2);
+
+        Map<String, String> bodies = new HashMap<>();
+        mailRepository.findAll().forEach(mail -> bodies.put(mail.getRecipient(), mail.getBody()));
+        assertThat(bodies).containsEntry("sent@example.com", "")
+                .containsEntry("failed@example.com", "")
+                .containsEntry("pending@example.com", "Code 111111");
+    }
+
+    @Test
+    void failsOnlyRejectedMessagesOfBatch() {
+        mailRepository.save(new OutboundMail("first@example.com", "Subject", "Body"));
+        mailRepository.save(new OutboundMail("reject@example.com", "Subject", "Body"));
+        mailRepository.save(new OutboundMail("third@example.com", "Subject", "Body"));
+
+        dispatcher(new RejectingSender()).dispatch();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(2);
+        Map<String, MailStatus> statuses = new HashMap<>();
+        mailRepository.findAll().forEach(mail -> statuses.put(mail.getRecipient(), mail.getStatus()));
+        assertThat(statuses).containsEntry("first@example.com", MailStatus.SENT)
+                .containsEntry("reject@example.com", MailStatus.PENDING)
+                .containsEntry("third@example.com", MailStatus.SENT);
+    }
+
+    @Test
+    void skipsMailClaimedByAnotherNode() {
+        OutboundMail mail = mailRepository.save(new OutboundMail("user@example.com", "Subject", "Body"));
+        LocalDateTime now = LocalDateTime.now();
+        assertThat(mailRepository.claim(List.of(mail.getId()), MailStatus.PENDING, now, "other-node",
+                now.plusMinutes(2))).isEqualTo(1);
+
+        dispatcher(smtpSender()).dispatch();
+
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+        assertThat(single().getStatus()).isEqualTo(MailStatus.PENDING);
+    }
+
+    private OutboundMail single() {
+        List<OutboundMail> all = mailRepository.findAll();
+        assertThat(all).hasSize(1);
+        return all.get(0);
+    }
+
+    private MailDispatcher dispatcher(JavaMailSender sender) {
+        MailDispatcher dispatcher = new MailDispatcher(mailRepository, sender);
+        ReflectionTestUtils.setField(dispatcher, "fromEmail", "noreply@example.com");
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 20);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "retryBaseMs", 60_000L);
+        ReflectionTestUtils.setField(dispatcher, "retryMaxMs", 600_000L);
+        ReflectionTestUtils.setField(dispatcher, "claimLeaseMs", 120_000L);
+        return dispatcher;
+    }
+
+    private static JavaMailSenderImpl smtpSender() {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        return sender;
+    }
+
+    // Порт, на котором никто не слушает
+    private static JavaMailSenderImpl unreachableSender() throws IOException {
+        JavaMailSenderImpl sender = smtpSender();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            sender.setPort(socket.getLocalPort());
+        }
+        return sender;
+    }
+
+    /**
+     * Отправляет письма через GreenMail, кроме адресатов reject@..., для которых сообщает
+     * об ошибке так же, как JavaMailSenderImpl при отказе сервера в части пакета.
+     */
+    private static class RejectingSender extends JavaMailSenderImpl {
+
+        RejectingSender() {
+            setHost("localhost");
+            setPort(ServerSetupTest.SMTP.getPort());
+        }
+
+        @Override
+        public void send(SimpleMailMessage... messages) {
+            List<SimpleMailMessage> accepted = new ArrayList<>();
+            Map<Object, Exception> failed = new HashMap<>();
+            for (SimpleMailMessage message : messages) {
+                if (Arrays.stream(message.getTo()).anyMatch(to -> to.startsWith("reject@"))) {
+                    failed.put(message, new IllegalStateException("550 Mailbox unavailable"));
+                } else {
+                    accepted.add(message);
+                }
+            }
+            super.send(accepted.toArray(SimpleMailMessage[]::new));
+            if (!failed.isEmpty()) {
+                throw new MailSendException(failed);
+            }
+        }
+    }
+}
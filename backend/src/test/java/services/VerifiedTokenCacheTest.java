@@ -0,0 +1,95 @@
+package services;
+
+import enums.UserActivate;
+import enums.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import models.TokenRevocation;
+import models.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import repositories.UserRepository;
+import services.cluster.LoopbackClusterBus;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка JWT через кэш: отзыв из базы и токены удаленного пользователя.
+ */
+class VerifiedTokenCacheTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LoopbackClusterBus clusterBus = new LoopbackClusterBus("test");
+    private JwtService jwtService;
+    private VerifiedTokenCache tokenCache;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secret", "test-secret-test-secret-test-secret-test-secret");
+        jwtService.init();
+        tokenCache = new VerifiedTokenCache(jwtService, userRepository, clusterBus, meterRegistry);
+        ReflectionTestUtils.setField(tokenCache, "maxSize", 100);
+        tokenCache.subscribeCluster();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clusterBus.close();
+    }
+
+    @Test
+    void acceptsTokenOfExistingUser() {
+        when(userRepository.findTokenRevocation(1L)).thenReturn(Optional.of(new TokenRevocation(null)));
+        String token = jwtService.generateToken(user(1L));
+
+        assertThat(tokenCache.verify(token)).hasValueSatisfying(principal ->
+                assertThat(principal.userId()).isEqualTo(1L));
+        // Повторная проверка берется из кэша
+        assertThat(tokenCache.verify(token)).isPresent();
+        verify(userRepository, times(1)).findTokenRevocation(1L);
+    }
+
+    @Test
+    void rejectsTokenRevokedInDatabase() {
+        String token = jwtService.generateToken(user(1L));
+        when(userRepository.findTokenRevocation(1L))
+                .thenReturn(Optional.of(new TokenRevocation(Instant.now().plusSeconds(1))));
+
+        assertThat(tokenCache.verify(token)).isEmpty();
+        assertThat(revokedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsTokenOfDeletedUser() {
+        when(userRepository.findTokenRevocation(2L)).thenReturn(Optional.empty());
+        String token = jwtService.generateToken(user(2L));
+
+        assertThat(tokenCache.verify(token)).isEmpty();
+        assertThat(tokenCache.verify(token)).isEmpty();
+
+        // Отрицательный результат запоминается: база запрашивается один раз
+        verify(userRepository, times(1)).findTokenRevocation(2L);
+        assertThat(revokedCount()).isEqualTo(2);
+    }
+
+    private double revokedCount() {
+        return meterRegistry.get("jwt.validation.failures").tag("reason", "REVOKED").counter().count();
+    }
+
+    private static User user(Long id) {
+        User user = new User("user" + id, "user" + id + "@example.com", "{bcrypt}unused", UserRole.Base);
+        user.setId(id);
+        user.setActivation(UserActivate.Enable);
+        return user;
+    }
+}
@@ -0,0 +1,187 @@
+package services.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import models.RoomRoute;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Маршрутизация комнат двух узлов на {@link LoopbackClusterBus}: владелец по кольцу,
+ * переадресация в открытую на другом узле комнату и перестроение кольца при уходе и возвращении узла.
+ */
+class RoomRouterTest {
+
+    private static final String URL_A = "wss://a.example.com/signal";
+    private static final String URL_B = "wss://b.example.com/signal";
+
+    private final List<Node> nodes = new ArrayList<>();
+    private Node a;
+    private Node b;
+
+    @BeforeEach
+    void startNodes() {
+        a = new Node("router-a");
+        b = new Node("router-b");
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(node -> node.bus.close());
+    }
+
+    @Test
+    void eachRoomIsOwnedByExactlyOneNode() {
+        connect();
+
+        int ownedByA = 0;
+        for (int i = 0; i < 100; i++) {
+            String room = "room-" + i;
+            RoomRoute fromA = a.router.route(room);
+            RoomRoute fromB = b.router.route(room);
+            // Один узел обслуживает комнату сам, другой переадресует к нему
+            if (fromA == null) {
+                ownedByA++;
+                assertThat(fromB).isEqualTo(new RoomRoute("router-a", URL_A));
+            } else {
+                assertThat(fromA).isEqualTo(new RoomRoute("router-b", URL_B));
+                assertThat(fromB).isNull();
+            }
+        }
+        assertThat(ownedByA).isBetween(20, 80);
+    }
+
+    @Test
+    void redirectsToNodeWhereRoomIsOpen() {
+        connect();
+        String room = roomOwnedBy(b);
+        assertThat(a.router.route(room)).isEqualTo(new RoomRoute("router-b", URL_B));
+
+        // Комнату открыл a, пока кольцо расходилось: входы идут к a, пока она открыта
+        a.router.roomOpened(room);
+        assertThat(a.router.route(room)).isNull();
+        await(() -> b.router.route(room) != null);
+        assertThat(b.router.route(room)).isEqualTo(new RoomRoute("router-a", URL_A));
+
+        a.router.roomClosed(room);
+        await(() -> b.router.route(room) == null);
+        assertThat(a.router.route(room)).isEqualTo(new RoomRoute("router-b", URL_B));
+    }
+
+    @Test
+    void newNodeLearnsRoomsOpenBeforeItStarted() {
+        connect();
+        String room = roomOwnedBy(b);
+        a.router.roomOpened(room);
+
+        Node c = new Node("router-c");
+        c.urls.put("router-a", URL_A);
+        c.urls.put("router-b", URL_B);
+        c.router.start();
+
+        await(() -> new RoomRoute("router-a", URL_A).equals(c.router.route(room)));
+    }
+
+    @Test
+    void rebuildsRingWhenNodeLeavesAndReturns() {
+        connect();
+        List<String> rooms = roomsOwnedBy(b, 2);
+        String pinned = rooms.get(0);
+        String fresh = rooms.get(1);
+        // По кольцу комната a, но открыта на b
+        String onB = roomOwnedBy(a);
+        b.router.roomOpened(onB);
+        await(() -> a.router.route(onB) != null);
+
+        // b ушел: a обслуживает все комнаты, включая открытые на b (их участники переподключаются)
+        a.urls.clear();
+        a.rebuild();
+        assertThat(a.router.route(pinned)).isNull();
+        assertThat(a.router.route(onB)).isNull();
+        assertThat(a.router.handoff(pinned)).isNull();
+        a.router.roomOpened(pinned);
+
+        // b вернулся: новые комнаты его части кольца снова идут к нему, открытая на a остается на месте
+        a.urls.put("router-b", URL_B);
+        a.rebuild();
+        assertThat(a.router.route(fresh)).isEqualTo(new RoomRoute("router-b", URL_B));
+        assertThat(a.router.route(pinned)).isNull();
+        // При остановке a передал бы комнату b
+        assertThat(a.router.handoff(pinned)).isEqualTo(new RoomRoute("router-b", URL_B));
+    }
+
+    private void connect() {
+        a.urls.put("router-b", URL_B);
+        b.urls.put("router-a", URL_A);
+        a.router.start();
+        b.router.start();
+    }
+
+    private String roomOwnedBy(Node owner) {
+        return roomsOwnedBy(owner, 1).get(0);
+    }
+
+    private List<String> roomsOwnedBy(Node owner, int count) {
+        Node other = owner == a ? b : a;
+        List<String> rooms = new ArrayList<>();
+        for (int i = 0; rooms.size() < count; i++) {
+            String room = "room-" + i;
+            if (owner.router.route(room) == null && other.router.route(room) != null) {
+                rooms.add(room);
+            }
+        }
+        return rooms;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Узел кластера: маршрутизатор на своей шине и каталог-заглушка с адресами других узлов
+    private final class Node {
+
+        final LoopbackClusterBus bus;
+        final Map<String, String> urls = new ConcurrentHashMap<>();
+        final RoomRouter router;
+        private final List<Runnable> listeners = new ArrayList<>();
+
+        Node(String nodeId) {
+            bus = new LoopbackClusterBus(nodeId);
+            nodes.add(this);
+            ClusterDirectory directory = mock(ClusterDirectory.class);
+            when(directory.getNodeUrls()).thenAnswer(invocation -> Map.copyOf(urls));
+            when(directory.getNodeUrl(anyString())).thenAnswer(invocation -> urls.get(invocation.<String>getArgument(0)));
+            doAnswer(invocation -> listeners.add(invocation.getArgument(0))).when(directory).onNodesChanged(any());
+            router = new RoomRouter(bus, directory, new SimpleMeterRegistry());
+            ReflectionTestUtils.setField(router, "virtualNodes", 128);
+        }
+
+        // Как ClusterDirectory при изменении состава узлов
+        void rebuild() {
+            listeners.forEach(Runnable::run);
+        }
+    }
+}
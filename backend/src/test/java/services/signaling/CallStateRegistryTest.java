@@ -0,0 +1,85 @@
+package services.signaling;
+
+import enums.CallStatus;
+import models.CallState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Начало и завершение P2P-звонка: вызвать можно только подключенного пользователя,
+ * освобождаются только связанные друг с другом участники.
+ */
+class CallStateRegistryTest {
+
+    private final CallStateRegistry registry = new CallStateRegistry();
+
+    @BeforeEach
+    void connectUsers() {
+        for (long id = 1; id <= 4; id++) {
+            registry.register(id);
+        }
+    }
+
+    @Test
+    void hangUpReleasesBothParticipants() {
+        registry.startCall(1L, 2L);
+        registry.answer(2L, 1L);
+
+        assertThat(registry.hangUp(1L, 2L)).isTrue();
+
+        assertThat(registry.get(1L)).isEqualTo(CallState.IDLE);
+        assertThat(registry.get(2L)).isEqualTo(CallState.IDLE);
+    }
+
+    @Test
+    void hangUpWithWrongPeerKeepsCallerInCall() {
+        registry.startCall(1L, 2L);
+        registry.answer(2L, 1L);
+
+        assertThat(registry.hangUp(1L, 3L)).isFalse();
+
+        assertThat(registry.get(1L)).isEqualTo(new CallState(CallStatus.IN_CALL, 2L));
+        assertThat(registry.get(2L)).isEqualTo(new CallState(CallStatus.IN_CALL, 1L));
+        assertThat(registry.get(3L)).isEqualTo(CallState.IDLE);
+    }
+
+    @Test
+    void hangUpDoesNotBreakOtherCallOfPeer() {
+        registry.startCall(1L, 2L);
+        registry.startCall(3L, 4L);
+
+        // Пользователь 1 не может завершить чужой звонок 3 и 4
+        assertThat(registry.hangUp(1L, 3L)).isFalse();
+
+        assertThat(registry.isPeer(1L, 2L)).isTrue();
+        assertThat(registry.isPeer(3L, 4L)).isTrue();
+        assertThat(registry.isPeer(4L, 3L)).isTrue();
+    }
+
+    @Test
+    void hangUpWhenIdleChangesNothing() {
+        assertThat(registry.hangUp(1L, 2L)).isFalse();
+
+        assertThat(registry.count(CallStatus.IDLE)).isEqualTo(4);
+    }
+
+    @Test
+    void startCallToDisconnectedUserIsRejected() {
+        registry.disconnect(2L);
+
+        assertThat(registry.startCall(1L, 2L)).isFalse();
+
+        assertThat(registry.get(1L)).isEqualTo(CallState.IDLE);
+        // Состояние отключившегося пользователя не восстанавливается
+        assertThat(registry.count(CallStatus.RINGING)).isZero();
+        assertThat(registry.count(CallStatus.IDLE)).isEqualTo(3);
+    }
+
+    @Test
+    void startCallToUnknownUserIsRejected() {
+        assertThat(registry.startCall(1L, 99L)).isFalse();
+        assertThat(registry.get(1L)).isEqualTo(CallState.IDLE);
+    }
+}
@@ -0,0 +1,250 @@
+package services.turn;
+
+import models.TurnServerStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * STUN-проверки и выбор TURN-серверов против локальных UDP-ответчиков на STUN Binding:
+ * быстрого, медленного и молчащего.
+ */
+class TurnServerPoolTest {
+
+    private static final int PROBE_TIMEOUT_MS = 300;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void closeResources() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void probeMeasuresRespondingServer() throws IOException {
+        StunResponder responder = responder(50, false);
+
+        OptionalLong rtt = StunProbe.probe(responder.address(), PROBE_TIMEOUT_MS);
+
+        assertThat(rtt).isPresent();
+        assertThat(rtt.getAsLong()).isGreaterThanOrEqualTo(50_000_000L);
+    }
+
+    @Test
+    void probeTimesOutOnSilentServer() throws IOException {
+        DatagramSocket silent = silentServer();
+
+        long startedAt = System.nanoTime();
+        OptionalLong rtt = StunProbe.probe(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort()), PROBE_TIMEOUT_MS);
+
+        assertThat(rtt).isEmpty();
+        assertThat((System.nanoTime() - startedAt) / 1_000_000).isLessThan(PROBE_TIMEOUT_MS * 3L);
+    }
+
+    @Test
+    void probeIgnoresForeignTransaction() throws IOException {
+        // Сначала приходит ответ на чужую транзакцию, затем настоящий
+        StunResponder responder = responder(0, true);
+
+        assertThat(StunProbe.probe(responder.address(), PROBE_TIMEOUT_MS)).isPresent();
+        assertThat(responder.foreignSent()).isTrue();
+    }
+
+    @Test
+    void ranksHealthyServersByRttAndExcludesSilentOne() throws IOException {
+        StunResponder fast = responder(0, false);
+        StunResponder slow = responder(100, false);
+        DatagramSocket silent = silentServer();
+        String fastUrl = url(fast.address().getPort());
+        String slowUrl = url(slow.address().getPort());
+        String silentUrl = url(silent.getLocalPort());
+        TurnServerPool pool = pool(silentUrl, slowUrl, fastUrl);
+
+        awaitProbed(pool);
+
+        assertThat(status(pool, silentUrl).healthy()).isFalse();
+        assertThat(status(pool, fastUrl).healthy()).isTrue();
+        assertThat(status(pool, slowUrl).rttMillis()).isGreaterThanOrEqualTo(100);
+        assertThat(urls(pool.select())).containsExactly(fastUrl, slowUrl);
+    }
+
+    @Test
+    void spreadsLoadAcrossServers() throws IOException {
+        StunResponder fast = responder(0, false);
+        StunResponder slow = responder(100, false);
+        String fastUrl = url(fast.address().getPort());
+        String slowUrl = url(slow.address().getPort());
+        TurnServerPool pool = pool(fastUrl, slowUrl);
+        ReflectionTestUtils.setField(pool, "maxServers", 1);
+        // Одни выданные учетные данные перевешивают разницу во времени ответа
+        ReflectionTestUtils.setField(pool, "loadPenaltyMs", 1000.0);
+
+        awaitProbed(pool);
+
+        assertThat(urls(pool.select())).containsExactly(fastUrl);
+        assertThat(urls(pool.select())).containsExactly(slowUrl);
+        assertThat(status(pool, fastUrl).recentlyIssued()).isEqualTo(1);
+        assertThat(status(pool, slowUrl).recentlyIssued()).isEqualTo(1);
+    }
+
+    @Test
+    void returnsAllServersWhenNoneIsHealthy() throws IOException {
+        String silentUrl = url(silentServer().getLocalPort());
+        TurnServerPool pool = pool(silentUrl);
+
+        awaitProbed(pool);
+
+        assertThat(status(pool, silentUrl).healthy()).isFalse();
+        assertThat(urls(pool.select())).containsExactly(silentUrl);
+    }
+
+    /**
+     * Пул с одной проверкой каждого сервера сразу после запуска: следующая и сброс
+     * нагрузки наступят после окончания теста. Одной неудачи достаточно для исключения.
+     */
+    private TurnServerPool pool(String... urls) {
+        TurnServerPool pool = new TurnServerPool(urls);
+        ReflectionTestUtils.setField(pool, "maxServers", 2);
+        ReflectionTestUtils.setField(pool, "probeIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(pool, "probeTimeoutMs", PROBE_TIMEOUT_MS);
+        ReflectionTestUtils.setField(pool, "unhealthyAfter", 1);
+        ReflectionTestUtils.setField(pool, "loadPenaltyMs", 0.0);
+        resources.add(pool::shutdown);
+        pool.start();
+        return pool;
+    }
+
+    private static void awaitProbed(TurnServerPool pool) {
+        await(() -> pool.getStatus().stream()
+                .allMatch(status -> status.rttMillis() >= 0 || status.consecutiveFailures() > 0));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static TurnServerStatus status(TurnServerPool pool, String url) {
+        return pool.getStatus().stream().filter(status -> status.url().equals(url)).findFirst().orElseThrow();
+    }
+
+    private static List<String> urls(List<TurnServer> servers) {
+        return servers.stream().map(TurnServer::getUrl).toList();
+    }
+
+    private static String url(int port) {
+        return "turn:" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port;
+    }
+
+    private StunResponder responder(long delayMs, boolean foreignFirst) throws IOException {
+        StunResponder responder = new StunResponder(delayMs, foreignFirst);
+        resources.add(responder);
+        return responder;
+    }
+
+    // Сокет принимает запросы, но никогда не отвечает
+    private DatagramSocket silentServer() throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        resources.add(socket);
+        return socket;
+    }
+
+    /**
+     * Отвечает на Binding Request ответом Binding Success с тем же идентификатором транзакции.
+     */
+    private static class StunResponder implements AutoCloseable {
+
+        private final DatagramSocket socket;
+        private final long delayMs;
+        private final boolean foreignFirst;
+        private final Thread thread;
+        private volatile boolean foreignSent;
+
+        StunResponder(long delayMs, boolean foreignFirst) throws IOException {
+            this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            this.delayMs = delayMs;
+            this.foreignFirst = foreignFirst;
+            this.thread = new Thread(this::serve, "stun-responder-" + socket.getLocalPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress address() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+
+        boolean foreignSent() {
+            return foreignSent;
+        }
+
+        private void serve() {
+            byte[] buffer = new byte[512];
+            try {
+                while (!socket.isClosed()) {
+                    DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(request);
+                    ByteBuffer header = ByteBuffer.wrap(request.getData(), 0, request.getLength());
+                    if (request.getLength() < 20 || header.getShort() != 0x0001) {
+                        continue;
+                    }
+                    byte[] transactionId = Arrays.copyOfRange(request.getData(), 8, 20);
+                    if (delayMs > 0) {
+                        Thread.sleep(delayMs);
+                    }
+                    if (foreignFirst) {
+                        byte[] foreign = transactionId.clone();
+                        foreign[0] ^= (byte) 0xFF;
+                        reply(request, foreign);
+                        foreignSent = true;
+                    }
+                    reply(request, transactionId);
+                }
+            } catch (SocketException e) {
+                // Сокет закрыт в конце теста
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void reply(DatagramPacket request, byte[] transactionId) throws IOException {
+            ByteBuffer response = ByteBuffer.allocate(20);
+            response.putShort((short) 0x0101);
+            response.putShort((short) 0);
+            response.putInt(0x2112A442);
+            response.put(transactionId);
+            socket.send(new DatagramPacket(response.array(), 20, request.getSocketAddress()));
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            socket.close();
+            thread.join(1000);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package services.webrtc;
+
+import org.junit.jupiter.api.Test;
+import org.kurento.client.KurentoClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Размещение конвейеров по медиасерверам пула; клиенты Kurento - заглушки Mockito.
+ */
+class KurentoClientPoolTest {
+
+    private static final List<String> URIS = List.of("ws://kms-1/kurento", "ws://kms-2/kurento", "ws://kms-3/kurento");
+
+    @Test
+    void requiresAtLeastOneServer() {
+        assertThatThrownBy(() -> new KurentoClientPool(List.of(), uri -> mock(KurentoClient.class)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void placesPipelineOnLeastLoadedServer() {
+        KurentoClientPool pool = new KurentoClientPool(URIS, uri -> mock(KurentoClient.class));
+        List<MediaServer> servers = pool.getServers();
+        servers.get(0).pipelineCreated();
+        servers.get(0).pipelineCreated();
+        // Конечные точки учитываются наравне с конвейерами
+        servers.get(1).pipelineCreated();
+        servers.get(1).endpointCreated();
+        servers.get(1).endpointCreated();
+        servers.get(2).pipelineCreated();
+
+        MediaServer placed = pool.placePipeline();
+
+        assertThat(placed.getUri()).isEqualTo("ws://kms-3/kurento");
+        assertThat(placed.getPipelines()).isEqualTo(2);
+        assertThat(pool.placePipeline().getUri()).isEqualTo("ws://kms-1/kurento");
+    }
+
+    @Test
+    void spreadsConcurrentPlacementsEvenly() throws Exception {
+        KurentoClientPool pool = new KurentoClientPool(URIS, uri -> mock(KurentoClient.class));
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> placements = new ArrayList<>();
+        try {
+            for (int i = 0; i < 300; i++) {
+                placements.add(threads.submit(() -> {
+                    start.await();
+                    return pool.placePipeline();
+                }));
+            }
+            start.countDown();
+            for (Future<?> placement : placements) {
+                placement.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertThat(pool.getServers()).allSatisfy(server -> assertThat(server.getPipelines()).isEqualTo(100));
+    }
+
+    @Test
+    void destroysAllClients() {
+        List<KurentoClient> clients = new ArrayList<>();
+        KurentoClientPool pool = new KurentoClientPool(URIS, uri -> {
+            KurentoClient client = mock(KurentoClient.class);
+            clients.add(client);
+            return client;
+        });
+
+        pool.destroy();
+
+        assertThat(clients).hasSize(3);
+        clients.forEach(client -> verify(client).destroy());
+    }
+}
@@ -0,0 +1,209 @@
+package services.webrtc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import models.RoomStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.springframework.test.util.ReflectionTestUtils;
+import services.cluster.RoomRouter;
+import services.signaling.IceCandidateBatcher;
+import services.signaling.QueuedWebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Создание комнат и учет входов в {@link RoomManager} против заглушки медиасервера на локальном JSON-RPC:
+ * один конвейер на комнату при одновременных входах, распределение комнат по серверам
+ * закрытие опустевшей комнаты только после завершения всех начатых входов и выход до завершения входа.
+ */
+class RoomManagerTest {
+
+    private static final long EMPTY_GRACE_MS = 100;
+
+    private final StubMediaServerHandler mediaServer = new StubMediaServerHandler();
+    private final RoomRouter roomRouter = mock(RoomRouter.class);
+    private final ExecutorService kurentoExecutor = Executors.newFixedThreadPool(4);
+    private final ExecutorService joiners = Executors.newFixedThreadPool(20);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private KurentoClientPool kurentoPool;
+    private RoomManager roomManager;
+
+    @AfterEach
+    void shutdown() {
+        mediaServer.release("MediaPipeline");
+        mediaServer.release("WebRtcEndpoint");
+        roomManager.shutdown();
+        joiners.shutdownNow();
+        kurentoExecutor.shutdownNow();
+        kurentoPool.destroy();
+    }
+
+    @Test
+    void concurrentJoinsShareOnePipeline() {
+        start(1);
+        mediaServer.hold("MediaPipeline");
+
+        List<CompletableFuture<UserSession>> joins = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            joins.add(joinAsync("room", "user-" + i));
+        }
+        await(() -> mediaServer.getRequestCount() > 0);
+        assertThat(joins).noneMatch(CompletableFuture::isDone);
+
+        mediaServer.release("MediaPipeline");
+        joins.forEach(join -> assertThat(join.orTimeout(5, TimeUnit.SECONDS).join()).isNotNull());
+
+        assertThat(mediaServer.getCreatedCount("MediaPipeline")).isEqualTo(1);
+        verify(roomRouter, times(1)).roomOpened("room");
+        MediaServer server = kurentoPool.getServers().get(0);
+        assertThat(server.getPipelines()).isEqualTo(1);
+        assertThat(server.getEndpoints()).isEqualTo(20);
+        RoomStats stats = roomManager.getStats();
+        assertThat(stats.participants()).isEqualTo(20);
+        assertThat(stats.joins()).isEqualTo(20);
+        assertThat(stats.failedJoins()).isZero();
+        // Вызовы медиасервера учитываются в реестре, переданном RoomManager
+        assertThat(meterRegistry.get("kurento.rpc").tag("operation", "createPipeline").tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("kurento.rpc").tag("operation", "createEndpoint").timer().count())
+                .isEqualTo(20);
+    }
+
+    @Test
+    void spreadsRoomsAcrossServers() {
+        start(2);
+
+        List<CompletableFuture<UserSession>> joins = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            joins.add(joinAsync("room-" + i, "user-" + i));
+        }
+        joins.forEach(join -> join.orTimeout(5, TimeUnit.SECONDS).join());
+
+        assertThat(kurentoPool.getServers()).allSatisfy(server -> {
+            assertThat(server.getPipelines()).isEqualTo(5);
+            assertThat(server.getEndpoints()).isEqualTo(5);
+        });
+    }
+
+    @Test
+    void pendingJoinKeepsEmptyRoomOpen() throws Exception {
+        start(1);
+        UserSession alice = joinAsync("room", "alice").orTimeout(5, TimeUnit.SECONDS).join();
+        Room room = roomManager.getRoom("room").join();
+
+        // Вход bob зарезервирован, но его конечная точка еще создается
+        mediaServer.hold("WebRtcEndpoint");
+        CompletableFuture<UserSession> bob = joinAsync("room", "bob");
+        await(() -> ((AtomicInteger) ReflectionTestUtils.getField(room, "pendingJoins")).get() == 1);
+
+        roomManager.leave(alice);
+        Thread.sleep(EMPTY_GRACE_MS * 3);
+        MediaServer server = kurentoPool.getServers().get(0);
+        assertThat(server.getPipelines()).isEqualTo(1);
+        verify(roomRouter, never()).roomClosed("room");
+
+        mediaServer.release("WebRtcEndpoint");
+        UserSession joined = bob.orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(room.getParticipants()).containsExactly(joined);
+        assertThat(roomManager.getRoom("room").join()).isSameAs(room);
+
+        // Последний участник вышел - комната закрывается по истечении периода ожидания
+        roomManager.leave(joined);
+        await(() -> server.getPipelines() == 0);
+        verify(roomRouter).roomClosed("room");
+        await(() -> server.getEndpoints() == 0);
+
+        joinAsync("room", "carol").orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(mediaServer.getCreatedCount("MediaPipeline")).isEqualTo(2);
+        assertThat(server.getPipelines()).isEqualTo(1);
+    }
+
+    @Test
+    void leaveDuringPendingJoinLeavesNoGhost() throws Exception {
+        start(1);
+        QueuedWebSocketSession aliceSocket = mock(QueuedWebSocketSession.class);
+        UserSession alice = joinAsync("room", "alice", aliceSocket, user -> {
+        }).orTimeout(5, TimeUnit.SECONDS).join();
+        Room room = roomManager.getRoom("room").join();
+
+        // bob выходит, пока его конечная точка еще создается
+        mediaServer.hold("WebRtcEndpoint");
+        AtomicReference<UserSession> pending = new AtomicReference<>();
+        CompletableFuture<UserSession> bob = joinAsync("room", "bob", mock(QueuedWebSocketSession.class), pending::set);
+        await(() -> pending.get() != null);
+        roomManager.leave(pending.get());
+        mediaServer.release("WebRtcEndpoint");
+
+        assertThatThrownBy(() -> bob.orTimeout(5, TimeUnit.SECONDS).join())
+                .satisfies(error -> assertThat(RoomManager.isCancelled(error)).isTrue());
+        assertThat(room.getParticipants()).containsExactly(alice);
+        // alice получила только existingParticipants при своем входе: о bob ее не уведомляли
+        verify(aliceSocket, times(1)).sendMessage(any());
+        MediaServer server = kurentoPool.getServers().get(0);
+        await(() -> server.getEndpoints() == 1);
+        RoomStats stats = roomManager.getStats();
+        assertThat(stats.joins()).isEqualTo(1);
+        assertThat(stats.failedJoins()).isZero();
+
+        // Прерванный вход не мешает закрыть опустевшую комнату
+        roomManager.leave(alice);
+        await(() -> server.getPipelines() == 0);
+        verify(roomRouter).roomClosed("room");
+    }
+
+    private void start(int servers) {
+        List<String> uris = new ArrayList<>();
+        for (int i = 1; i <= servers; i++) {
+            uris.add("ws://kms-" + i + "/kurento");
+        }
+        kurentoPool = new KurentoClientPool(uris,
+                uri -> KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(mediaServer)));
+        roomManager = new RoomManager(kurentoPool, kurentoExecutor, mock(IceCandidateBatcher.class), roomRouter,
+                meterRegistry);
+        ReflectionTestUtils.setField(roomManager, "emptyGraceMs", EMPTY_GRACE_MS);
+    }
+
+    // Вход из отдельного потока: создание объектов медиасервера может выполняться в вызывающем потоке
+    private CompletableFuture<UserSession> joinAsync(String roomName, String userName) {
+        return joinAsync(roomName, userName, mock(QueuedWebSocketSession.class), user -> {
+        });
+    }
+
+    private CompletableFuture<UserSession> joinAsync(String roomName, String userName,
+                                                     QueuedWebSocketSession socket, Consumer<UserSession> onCreated) {
+        return CompletableFuture.supplyAsync(() -> roomManager.join(roomName, userName, socket, onCreated), joiners)
+                .thenCompose(join -> join);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package services.webrtc;
+
+import com.google.gson.JsonObject;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Медиасервер-заглушка на стороне JSON-RPC: отвечает на create/invoke/subscribe/release так,
+ * как Kurento, но не обрабатывает медиа. Подключается через
+ * {@link org.kurento.jsonrpc.client.JsonRpcClientLocal}, без сети.
+ * События IceCandidateFound не генерируются. Используется тестами комнат и нагрузочным тестом;
+ * тесты могут придержать создание объектов нужного типа, чтобы проверить вход во время создания.
+ */
+public class StubMediaServerHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private static final String SESSION_ID = "loadtest";
+    private static final String SDP_ANSWER = "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=Kurento stub\r\nt=0 0\r\n";
+
+    private final AtomicLong objectIds = new AtomicLong();
+    private final LongAdder requests = new LongAdder();
+    // Тип объекта (MediaPipeline, WebRtcEndpoint) -> число созданных
+    private final Map<String, LongAdder> created = new ConcurrentHashMap<>();
+    private final Map<String, CountDownLatch> holds = new ConcurrentHashMap<>();
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request) throws Exception {
+        requests.increment();
+        JsonObject params = request.getParams();
+        JsonObject result = new JsonObject();
+        result.addProperty("sessionId", SESSION_ID);
+        switch (request.getMethod()) {
+            case "create" -> {
+                String type = params.get("type").getAsString();
+                awaitRelease(type);
+                created.computeIfAbsent(type, key -> new LongAdder()).increment();
+                result.addProperty("value", newObjectId(params));
+            }
+            case "invoke" -> {
+                if ("processOffer".equals(params.get("operation").getAsString())) {
+                    result.addProperty("value", SDP_ANSWER);
+                }
+            }
+            case "subscribe" -> result.addProperty("value", "subscription-" + objectIds.incrementAndGet());
+            case "ping" -> result.addProperty("value", "pong");
+            default -> {
+                // release, unsubscribe и прочее: пустой ответ
+            }
+        }
+        if (!request.isNotification()) {
+            transaction.sendResponse(result);
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getCreatedCount(String type) {
+        LongAdder count = created.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Задерживает ответы на создание объектов типа {@code type} до {@link #release(String)}.
+     */
+    public void hold(String type) {
+        holds.putIfAbsent(type, new CountDownLatch(1));
+    }
+
+    public void release(String type) {
+        CountDownLatch latch = holds.remove(type);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private void awaitRelease(String type) throws InterruptedException {
+        CountDownLatch latch = holds.get(type);
+        if (latch != null && !latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(type + " creation was held for too long");
+        }
+    }
+
+    // Идентификаторы элементов, как в Kurento, содержат идентификатор конвейера
+    private String newObjectId(JsonObject params) {
+        String id = params.get("type").getAsString() + "-" + objectIds.incrementAndGet();
+        JsonObject constructorParams = params.getAsJsonObject("constructorParams");
+        if (constructorParams != null && constructorParams.has("mediaPipeline")) {
+            return constructorParams.get("mediaPipeline").getAsString() + "/" + id;
+        }
+        return id;
+    }
+}
@@ -29,7 +29,8 @@ export function SocketProvider({
 
     const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
     const host = window.location.host;
-    const wsUrl = `${protocol}//${host}/signal?token=${user.token}`;
+    // features: optional protocol extensions; the server confirms them in connection-success
+    const wsUrl = `${protocol}//${host}/signal?token=${user.token}&features=ice-batch`;
     const ws = new WebSocket(wsUrl);
 
     ws.onopen = () => {
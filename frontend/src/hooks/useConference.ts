@@ -19,13 +19,41 @@ export const useConference = (roomName: string) => {
     useEffect(() => {
         if (!socket || !user || !roomName) return;
 
-        const joinRoom = () => {
+        // Room messages go to the node hosting the room: the shared socket until a roomRedirect arrives
+        let roomSocket: WebSocket = socket;
+        let redirectSocket: WebSocket | null = null;
+
+        const send = (message: object) => {
+            if (roomSocket.readyState === WebSocket.OPEN) {
+                roomSocket.send(JSON.stringify(message));
+            }
+        };
+
+        const joinRoom = (redirected = false) => {
             const message = {
                 id: 'joinRoom',
                 name: myName,
                 room: roomName,
+                redirected,
             };
-            socket.send(JSON.stringify(message));
+            send(message);
+        };
+
+        const onRoomRedirect = (message: any) => {
+            setParticipants(prev => {
+                Object.values(prev).forEach(p => p.rtcPeer?.dispose());
+                return {};
+            });
+            if (redirectSocket) {
+                redirectSocket.removeEventListener('message', messageListener);
+                redirectSocket.close();
+            }
+            const separator = message.url.includes('?') ? '&' : '?';
+            const ws = new WebSocket(`${message.url}${separator}token=${user.token}&features=ice-batch&mode=room`);
+            ws.addEventListener('message', messageListener);
+            ws.addEventListener('open', () => joinRoom(true));
+            redirectSocket = ws;
+            roomSocket = ws;
         };
 
         const onNewParticipant = (request: any) => {
@@ -66,7 +94,7 @@ export const useConference = (roomName: string) => {
                         sender: sender,
                         sdpOffer: offerSdp
                     };
-                    socket.send(JSON.stringify(message));
+                    send(message);
                 });
             });
 
@@ -79,7 +107,7 @@ export const useConference = (roomName: string) => {
                 name: sender,
                 candidate: candidate,
             };
-            socket.send(JSON.stringify(message));
+            send(message);
         };
 
         const onParticipantLeft = (message: any) => {
@@ -115,6 +143,9 @@ export const useConference = (roomName: string) => {
             console.log('Received message: ', parsedMessage);
 
             switch (parsedMessage.id) {
+                case 'roomRedirect':
+                    onRoomRedirect(parsedMessage);
+                    break;
                 case 'existingParticipants':
                     onExistingParticipants(parsedMessage);
                     break;
@@ -130,6 +161,10 @@ export const useConference = (roomName: string) => {
                 case 'iceCandidate':
                     iceCandidate(parsedMessage);
                     break;
+                case 'iceCandidates':
+                    parsedMessage.candidates.forEach((candidate: RTCIceCandidateInit) =>
+                        iceCandidate({ name: parsedMessage.name, candidate }));
+                    break;
                 default:
                     console.error('Unrecognized message', parsedMessage);
             }
@@ -144,7 +179,11 @@ export const useConference = (roomName: string) => {
             const message = {
                 id: 'leaveRoom',
             };
-            socket.send(JSON.stringify(message));
+            send(message);
+            if (redirectSocket) {
+                redirectSocket.removeEventListener('message', messageListener);
+                redirectSocket.close();
+            }
 
             Object.values(participants).forEach(p => p.rtcPeer?.dispose());
         };
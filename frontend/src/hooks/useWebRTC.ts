@@ -99,17 +99,9 @@ export function useWebRTC(
 
   useEffect(() => {
     if (socket) {
-      const handleMessage = async (event: MessageEvent) => {
-        const msg: SignalMessage = JSON.parse(event.data);
-
+      const applyPresence = (msg: SignalMessage) => {
         switch (msg.type) {
-          case "connection-success":
-            if (msg.myId) {
-              setMyId(msg.myId);
-            }
-            setOnlineUsers(msg.data as User[]);
-            break;
-            case "user-connected":
+          case "user-connected":
             setOnlineUsers(prev => {
                 if (prev.find(user => user.id === msg.userId)) {
                     return prev;
@@ -128,6 +120,27 @@ export function useWebRTC(
                 return user;
             }));
             break;
+        }
+      };
+
+      const handleMessage = async (event: MessageEvent) => {
+        const msg: SignalMessage = JSON.parse(event.data);
+
+        switch (msg.type) {
+          case "connection-success":
+            if (msg.myId) {
+              setMyId(msg.myId);
+            }
+            setOnlineUsers(msg.data as User[]);
+            break;
+          case "user-connected":
+          case "user-disconnected":
+          case "user-in-call-status-changed":
+            applyPresence(msg);
+            break;
+          case "presence-batch":
+            msg.events?.forEach(applyPresence);
+            break;
           case "call-made":
             if (msg.from && msg.offer) {
               setIncomingCall({
@@ -157,6 +170,13 @@ export function useWebRTC(
               );
             }
             break;
+          case "ice-candidates":
+            if (pcRef.current?.remoteDescription && msg.candidates) {
+              for (const candidate of msg.candidates) {
+                await pcRef.current.addIceCandidate(new RTCIceCandidate(candidate));
+              }
+            }
+            break;
           case "call-rejected":
             alert(msg.reason);
             stopCall();
@@ -1,34 +1,75 @@
-import React, { useEffect, useState, useCallback } from 'react';
+import React, { useEffect, useState, useCallback, useRef } from 'react';
 import { useAuthContext } from '../hooks/useAuth';
 import * as adminApi from '../services/adminApi';
+import type { UserFilter } from '../services/adminApi';
 import type { User } from '../types/types';
 import UserTable from '../components/UserTable';
 import { Header } from "../components/Header.tsx";
 
+const PAGE_SIZE = 100;
+const LOGIN_PREFIX_DELAY_MS = 300;
+
 const AdminPage: React.FC = () => {
     const { logout, user, toggle2FA } = useAuthContext();
+    const [filter, setFilter] = useState<UserFilter>({});
+    const [loginPrefix, setLoginPrefix] = useState<string>('');
     const [users, setUsers] = useState<User[]>([]);
+    const [nextCursor, setNextCursor] = useState<number | null>(null);
     const [loading, setLoading] = useState<boolean>(true);
     const [error, setError] = useState<string | null>(null);
+    // Responses to requests made before the filter changed are dropped
+    const requestId = useRef(0);
 
-    const fetchUsers = useCallback(async () => {
+    const fetchPage = useCallback(async (after?: number) => {
+        const id = ++requestId.current;
         try {
             setLoading(true);
-            const data = await adminApi.getAllUsers();
-            setUsers(data);
+            const page = await adminApi.listUsers(filter, after, PAGE_SIZE);
+            if (id !== requestId.current) {
+                return;
+            }
+            setUsers(prev => after === undefined ? page.items : [...prev, ...page.items]);
+            setNextCursor(page.nextCursor);
             setError(null);
         } catch (err) {
-            setError(err instanceof Error ? err.message : 'An unknown error occurred');
+            if (id === requestId.current) {
+                setError(err instanceof Error ? err.message : 'An unknown error occurred');
+            }
         }
         finally {
-            setLoading(false);
+            if (id === requestId.current) {
+                setLoading(false);
+            }
         }
-    }, []);
+    }, [filter]);
+
+    // Starts from the first page whenever the filter changes or the data is modified
+    const fetchUsers = useCallback(() => fetchPage(), [fetchPage]);
 
     useEffect(() => {
         fetchUsers();
     }, [fetchUsers]);
 
+    // Typing a login prefix should not send a request per keystroke
+    useEffect(() => {
+        const timer = setTimeout(() => {
+            setFilter(prev => (prev.loginPrefix ?? '') === loginPrefix
+                ? prev
+                : { ...prev, loginPrefix: loginPrefix || undefined });
+        }, LOGIN_PREFIX_DELAY_MS);
+        return () => clearTimeout(timer);
+    }, [loginPrefix]);
+
+    const handleRoleChange = (e: React.ChangeEvent<HTMLSelectElement>) => {
+        const role = e.target.value as UserFilter['role'] | '';
+        setFilter(prev => ({ ...prev, role: role || undefined }));
+    };
+
+    const handleActivationChange = (e: React.ChangeEvent<HTMLSelectElement>) => {
+        const activation = e.target.value as UserFilter['activation'] | '';
+        setFilter(prev => ({ ...prev, activation: activation || undefined }));
+    };
+
     if (!user) {
         return <div>Loading...</div>;
     }
@@ -39,18 +80,41 @@ const AdminPage: React.FC = () => {
             <div style={{ padding: '20px' }}>
                 <h1>Admin Panel</h1>
                 <p>Welcome, administrator!</p>
-                
+
                 <hr style={{ margin: '20px 0' }} />
 
                 <h2>User Management</h2>
-                {loading && <p>Loading users...</p>}
+                <div style={{ display: 'flex', gap: '10px', marginBottom: '10px' }}>
+                    <input
+                        type="text"
+                        placeholder="Login starts with..."
+                        value={loginPrefix}
+                        onChange={(e) => setLoginPrefix(e.target.value)}
+                    />
+                    <select value={filter.role ?? ''} onChange={handleRoleChange}>
+                        <option value="">All roles</option>
+                        <option value="Admin">Admin</option>
+                        <option value="VIP">VIP</option>
+                        <option value="Base">Base</option>
+                    </select>
+                    <select value={filter.activation ?? ''} onChange={handleActivationChange}>
+                        <option value="">Any status</option>
+                        <option value="Enable">Active</option>
+                        <option value="Disable">Blocked</option>
+                    </select>
+                </div>
                 {error && <p style={{ color: 'red' }}>Error: {error}</p>}
-                {!loading && !error && (
-                    <UserTable users={users} onDataChange={fetchUsers} />
+                <UserTable users={users} onDataChange={fetchUsers} />
+                {loading && <p>Loading users...</p>}
+                {!loading && nextCursor !== null && (
+                    <button style={{ marginTop: '10px' }} onClick={() => fetchPage(nextCursor)}>
+                        Load more
+                    </button>
                 )}
+                {!loading && !error && users.length === 0 && <p>No users found.</p>}
             </div>
         </>
     );
 };
 
-export default AdminPage;
\ No newline at end of file
+export default AdminPage;
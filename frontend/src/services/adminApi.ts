@@ -13,8 +13,30 @@ function getAuthHeader() {
     };
 }
 
-export async function getAllUsers(): Promise<User[]> {
-    const response = await fetch(`${API_BASE_URL}/users`, {
+export interface UserFilter {
+    role?: 'Admin' | 'Base' | 'VIP';
+    activation?: 'Enable' | 'Disable';
+    loginPrefix?: string;
+}
+
+export interface UserPage {
+    items: User[];
+    nextCursor: number | null;
+}
+
+function toQuery(params: Record<string, string | number | undefined>): string {
+    const query = new URLSearchParams();
+    Object.entries(params).forEach(([key, value]) => {
+        if (value !== undefined && value !== '') {
+            query.set(key, String(value));
+        }
+    });
+    return query.toString();
+}
+
+export async function listUsers(filter: UserFilter = {}, after?: number, limit = 100): Promise<UserPage> {
+    const query = toQuery({ ...filter, after, limit });
+    const response = await fetch(`${API_BASE_URL}/users?${query}`, {
         method: 'GET',
         headers: getAuthHeader()
     });
@@ -54,3 +76,32 @@ export async function changeUserRole(userId: number, newRole: 'Admin' | 'Base' |
         throw new Error('Failed to change user role');
     }
 }
+
+export interface BulkUpdateResult {
+    id: number;
+    status: 'UPDATED' | 'UNCHANGED' | 'NOT_FOUND';
+}
+
+async function bulkUpdate(path: string, method: 'POST' | 'PUT', body: object, error: string): Promise<BulkUpdateResult[]> {
+    const response = await fetch(`${API_BASE_URL}/users/bulk/${path}`, {
+        method,
+        headers: getAuthHeader(),
+        body: JSON.stringify(body)
+    });
+    if (!response.ok) {
+        throw new Error(error);
+    }
+    return response.json();
+}
+
+export function blockUsers(ids: number[]): Promise<BulkUpdateResult[]> {
+    return bulkUpdate('block', 'POST', { ids }, 'Failed to block users');
+}
+
+export function unblockUsers(ids: number[]): Promise<BulkUpdateResult[]> {
+    return bulkUpdate('unblock', 'POST', { ids }, 'Failed to unblock users');
+}
+
+export function changeUsersRole(ids: number[], role: 'Admin' | 'Base' | 'VIP'): Promise<BulkUpdateResult[]> {
+    return bulkUpdate('role', 'PUT', { ids, role }, 'Failed to change user roles');
+}
@@ -20,9 +20,11 @@ export interface SignalMessage {
     | "user-connected"
     | "user-disconnected"
     | "user-in-call-status-changed"
+    | "presence-batch"
     | "call-made"
     | "answer-made"
     | "ice-candidate"
+    | "ice-candidates"
     | "call-rejected"
     | "hang-up"
     | "call-user"
@@ -37,7 +39,10 @@ export interface SignalMessage {
     offer?: RTCSessionDescriptionInit;
     answer?: RTCSessionDescriptionInit;
     candidate?: RTCIceCandidateInit;
+    candidates?: RTCIceCandidateInit[];
+    features?: string[];
     reason?: string;
+    events?: SignalMessage[];
     to?: string;
     useTurn?: boolean;
 }
\ No newline at end of file